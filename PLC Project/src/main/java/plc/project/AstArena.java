@@ -0,0 +1,600 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact representation of an {@link Ast.Source} stored in a few primitive
+ * arrays instead of an object per node. Every node has a kind and an offset
+ * into a shared array of operands, which are the indices of its children, the
+ * lengths of its lists of children (stored inline), and references into a pool
+ * of constants for names, operators and literal values. Equal constants are
+ * pooled once per arena.
+ *
+ * Nodes are referred to by their index, and the view methods (such as {@link
+ * #getName(int)} and {@link #getStatement(int, int)}) read a node's operands
+ * without creating objects. Children are always stored before their parents,
+ * so the root {@link #SOURCE} node is the last one.
+ *
+ * The operands of each kind are, in order ({@code ?} marking operands which may
+ * be {@link #NONE}, and {@code n*} an inline list with its length):
+ *
+ *  - SOURCE: n* fields, n* methods
+ *  - FIELD: name, type name, value?
+ *  - METHOD: name, return type name?, n* (parameter, type name), n* statements
+ *  - EXPRESSION: expression
+ *  - DECLARATION: name, type name?, value?
+ *  - ASSIGNMENT: receiver, value
+ *  - IF: condition, n* then statements, n* else statements
+ *  - FOR: name, value, n* statements
+ *  - WHILE: condition, n* statements
+ *  - RETURN: value
+ *  - LITERAL: literal
+ *  - GROUP: expression
+ *  - BINARY: operator, left, right
+ *  - ACCESS: name, receiver?
+ *  - FUNCTION: name, receiver?, n* arguments
+ *
+ * The arena only holds the syntax of the tree, not the variables, functions
+ * and types set by the {@link Analyzer}, and converting a lazily parsed method
+ * parses its body.
+ */
+public final class AstArena {
+
+    public static final int SOURCE = 0;
+    public static final int FIELD = 1;
+    public static final int METHOD = 2;
+    public static final int EXPRESSION = 3;
+    public static final int DECLARATION = 4;
+    public static final int ASSIGNMENT = 5;
+    public static final int IF = 6;
+    public static final int FOR = 7;
+    public static final int WHILE = 8;
+    public static final int RETURN = 9;
+    public static final int LITERAL = 10;
+    public static final int GROUP = 11;
+    public static final int BINARY = 12;
+    public static final int ACCESS = 13;
+    public static final int FUNCTION = 14;
+
+    /**
+     * The operand of an absent child or constant.
+     */
+    public static final int NONE = -1;
+
+    private byte[] kinds;
+    private int[] offsets;
+    private int[] data;
+    private Object[] constants;
+    private int size = 0;
+    private int length = 0;
+    private int constantCount = 0;
+    private Map<Object, Integer> pool = new HashMap<>();
+
+    private AstArena(int nodes) {
+        kinds = new byte[nodes];
+        offsets = new int[nodes];
+        data = new int[nodes * 3];
+        constants = new Object[16];
+    }
+
+    /**
+     * Creates an arena over existing arrays, as read by the {@link AstCache}.
+     */
+    AstArena(byte[] kinds, int[] offsets, int[] data, Object[] constants) {
+        this.kinds = kinds;
+        this.offsets = offsets;
+        this.data = data;
+        this.constants = constants;
+        this.size = kinds.length;
+        this.length = data.length;
+        this.constantCount = constants.length;
+        this.pool = null;
+    }
+
+    /**
+     * Converts the source into an arena.
+     */
+    public static AstArena of(Ast.Source source) {
+        AstArena arena = new AstArena(64);
+        arena.add(source);
+        arena.kinds = Arrays.copyOf(arena.kinds, arena.size);
+        arena.offsets = Arrays.copyOf(arena.offsets, arena.size);
+        arena.data = Arrays.copyOf(arena.data, arena.length);
+        arena.constants = Arrays.copyOf(arena.constants, arena.constantCount);
+        arena.pool = null;
+        return arena;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    byte[] getKinds() {
+        return kinds;
+    }
+
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    int[] getData() {
+        return data;
+    }
+
+    Object[] getConstants() {
+        return constants;
+    }
+
+    /**
+     * Returns the index of the {@link #SOURCE} node.
+     */
+    public int getRoot() {
+        return size - 1;
+    }
+
+    public int getKind(int node) {
+        return kinds[node];
+    }
+
+    public String getName(int node) {
+        switch (kinds[node]) {
+            case FIELD:
+            case METHOD:
+            case DECLARATION:
+            case FOR:
+            case ACCESS:
+            case FUNCTION:
+                return (String) constant(operand(node, 0));
+            default:
+                throw unsupported(node, "name");
+        }
+    }
+
+    /**
+     * Returns the type name of a field or declaration, or the return type name
+     * of a method, which is null if absent.
+     */
+    public String getTypeName(int node) {
+        switch (kinds[node]) {
+            case FIELD:
+            case DECLARATION:
+            case METHOD:
+                return (String) constant(operand(node, 1));
+            default:
+                throw unsupported(node, "type name");
+        }
+    }
+
+    /**
+     * Returns the value of a field, declaration, assignment, for or return
+     * node, which is {@link #NONE} for a field or declaration without one.
+     */
+    public int getValue(int node) {
+        switch (kinds[node]) {
+            case FIELD:
+            case DECLARATION:
+                return operand(node, 2);
+            case ASSIGNMENT:
+            case FOR:
+                return operand(node, 1);
+            case RETURN:
+                return operand(node, 0);
+            default:
+                throw unsupported(node, "value");
+        }
+    }
+
+    /**
+     * Returns the receiver of an assignment, or of an access or function,
+     * which is {@link #NONE} if absent.
+     */
+    public int getReceiver(int node) {
+        switch (kinds[node]) {
+            case ASSIGNMENT:
+                return operand(node, 0);
+            case ACCESS:
+            case FUNCTION:
+                return operand(node, 1);
+            default:
+                throw unsupported(node, "receiver");
+        }
+    }
+
+    public int getCondition(int node) {
+        if (kinds[node] != IF && kinds[node] != WHILE) {
+            throw unsupported(node, "condition");
+        }
+        return operand(node, 0);
+    }
+
+    public int getExpression(int node) {
+        if (kinds[node] != EXPRESSION && kinds[node] != GROUP) {
+            throw unsupported(node, "expression");
+        }
+        return operand(node, 0);
+    }
+
+    public Object getLiteral(int node) {
+        if (kinds[node] != LITERAL) {
+            throw unsupported(node, "literal");
+        }
+        return constant(operand(node, 0));
+    }
+
+    public String getOperator(int node) {
+        if (kinds[node] != BINARY) {
+            throw unsupported(node, "operator");
+        }
+        return (String) constant(operand(node, 0));
+    }
+
+    public int getLeft(int node) {
+        if (kinds[node] != BINARY) {
+            throw unsupported(node, "left operand");
+        }
+        return operand(node, 1);
+    }
+
+    public int getRight(int node) {
+        if (kinds[node] != BINARY) {
+            throw unsupported(node, "right operand");
+        }
+        return operand(node, 2);
+    }
+
+    public int getFieldCount(int node) {
+        return data[list(node, SOURCE, 0, "fields")];
+    }
+
+    public int getField(int node, int i) {
+        return element(list(node, SOURCE, 0, "fields"), i, 1);
+    }
+
+    public int getMethodCount(int node) {
+        return data[list(node, SOURCE, 1, "methods")];
+    }
+
+    public int getMethod(int node, int i) {
+        return element(list(node, SOURCE, 1, "methods"), i, 1);
+    }
+
+    public int getParameterCount(int node) {
+        return data[list(node, METHOD, 0, "parameters")];
+    }
+
+    public String getParameter(int node, int i) {
+        return (String) constant(element(list(node, METHOD, 0, "parameters"), i * 2, 2));
+    }
+
+    public String getParameterTypeName(int node, int i) {
+        return (String) constant(element(list(node, METHOD, 0, "parameters"), i * 2 + 1, 2));
+    }
+
+    /**
+     * Returns the number of statements of a method, for, while, or the then
+     * statements of an if.
+     */
+    public int getStatementCount(int node) {
+        return data[statements(node)];
+    }
+
+    public int getStatement(int node, int i) {
+        return element(statements(node), i, 1);
+    }
+
+    public int getElseStatementCount(int node) {
+        return data[list(node, IF, 1, "else statements")];
+    }
+
+    public int getElseStatement(int node, int i) {
+        return element(list(node, IF, 1, "else statements"), i, 1);
+    }
+
+    public int getArgumentCount(int node) {
+        return data[list(node, FUNCTION, 0, "arguments")];
+    }
+
+    public int getArgument(int node, int i) {
+        return element(list(node, FUNCTION, 0, "arguments"), i, 1);
+    }
+
+    /**
+     * Converts the whole arena back into an {@link Ast.Source}.
+     */
+    public Ast.Source toAst() {
+        return (Ast.Source) toAst(getRoot());
+    }
+
+    /**
+     * Converts the given node and its children into an {@link Ast}.
+     */
+    public Ast toAst(int node) {
+        switch (kinds[node]) {
+            case SOURCE: {
+                List<Ast.Field> fields = new ArrayList<>();
+                for (int i = 0; i < getFieldCount(node); i++) {
+                    fields.add((Ast.Field) toAst(getField(node, i)));
+                }
+                List<Ast.Method> methods = new ArrayList<>();
+                for (int i = 0; i < getMethodCount(node); i++) {
+                    methods.add((Ast.Method) toAst(getMethod(node, i)));
+                }
+                return new Ast.Source(fields, methods);
+            }
+            case FIELD:
+                return new Ast.Field(getName(node), getTypeName(node), optional(getValue(node)));
+            case METHOD: {
+                List<String> parameters = new ArrayList<>();
+                List<String> parameterTypeNames = new ArrayList<>();
+                for (int i = 0; i < getParameterCount(node); i++) {
+                    parameters.add(getParameter(node, i));
+                    parameterTypeNames.add(getParameterTypeName(node, i));
+                }
+                return new Ast.Method(getName(node), parameters, parameterTypeNames,
+                        Optional.ofNullable(getTypeName(node)), statements(node, getStatementCount(node), false));
+            }
+            case EXPRESSION:
+                return new Ast.Stmt.Expression(expr(getExpression(node)));
+            case DECLARATION:
+                return new Ast.Stmt.Declaration(getName(node), Optional.ofNullable(getTypeName(node)), optional(getValue(node)));
+            case ASSIGNMENT:
+                return new Ast.Stmt.Assignment(expr(getReceiver(node)), expr(getValue(node)));
+            case IF:
+                return new Ast.Stmt.If(expr(getCondition(node)), statements(node, getStatementCount(node), false),
+                        statements(node, getElseStatementCount(node), true));
+            case FOR:
+                return new Ast.Stmt.For(getName(node), expr(getValue(node)), statements(node, getStatementCount(node), false));
+            case WHILE:
+                return new Ast.Stmt.While(expr(getCondition(node)), statements(node, getStatementCount(node), false));
+            case RETURN:
+                return new Ast.Stmt.Return(expr(getValue(node)));
+            case LITERAL:
+                return new Ast.Expr.Literal(getLiteral(node));
+            case GROUP:
+                return new Ast.Expr.Group(expr(getExpression(node)));
+            case BINARY:
+                return new Ast.Expr.Binary(getOperator(node), expr(getLeft(node)), expr(getRight(node)));
+            case ACCESS:
+                return new Ast.Expr.Access(optional(getReceiver(node)), getName(node));
+            case FUNCTION: {
+                List<Ast.Expr> arguments = new ArrayList<>();
+                for (int i = 0; i < getArgumentCount(node); i++) {
+                    arguments.add(expr(getArgument(node, i)));
+                }
+                return new Ast.Expr.Function(optional(getReceiver(node)), getName(node), arguments);
+            }
+            default:
+                throw new AssertionError(kinds[node]);
+        }
+    }
+
+    private Ast.Expr expr(int node) {
+        return (Ast.Expr) toAst(node);
+    }
+
+    private Optional<Ast.Expr> optional(int node) {
+        return node == NONE ? Optional.empty() : Optional.of(expr(node));
+    }
+
+    private List<Ast.Stmt> statements(int node, int count, boolean otherwise) {
+        List<Ast.Stmt> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add((Ast.Stmt) toAst(otherwise ? getElseStatement(node, i) : getStatement(node, i)));
+        }
+        return statements;
+    }
+
+    /**
+     * Returns the offset of the statement list of a node.
+     */
+    private int statements(int node) {
+        switch (kinds[node]) {
+            case METHOD:
+                return list(node, METHOD, 1, "statements");
+            case IF:
+                return list(node, IF, 0, "statements");
+            case FOR:
+                return offsets[node] + 2;
+            case WHILE:
+                return offsets[node] + 1;
+            default:
+                throw unsupported(node, "statements");
+        }
+    }
+
+    /**
+     * Returns the offset of the given inline list of a node, skipping over the
+     * lists before it. Lists follow the fixed operands of each kind.
+     */
+    private int list(int node, int kind, int index, String name) {
+        if (kinds[node] != kind) {
+            throw unsupported(node, name);
+        }
+        int offset = offsets[node];
+        switch (kind) {
+            case METHOD:
+                offset += 2;
+                if (index > 0) {
+                    offset += 1 + data[offset] * 2;
+                }
+                return offset;
+            case IF:
+                offset += 1;
+                break;
+            case FUNCTION:
+                offset += 2;
+                break;
+            default:
+                break;
+        }
+        for (int i = 0; i < index; i++) {
+            offset += 1 + data[offset];
+        }
+        return offset;
+    }
+
+    private int element(int list, int i, int stride) {
+        if (i < 0 || i >= data[list] * stride) {
+            throw new IndexOutOfBoundsException("Element " + i + " is outside of the list of size " + data[list] * stride + ".");
+        }
+        return data[list + 1 + i];
+    }
+
+    private int operand(int node, int i) {
+        return data[offsets[node] + i];
+    }
+
+    private Object constant(int index) {
+        return index == NONE ? null : constants[index];
+    }
+
+    private IllegalArgumentException unsupported(int node, String name) {
+        return new IllegalArgumentException("Node " + node + " of kind " + kinds[node] + " has no " + name + ".");
+    }
+
+    /**
+     * Adds the node and its children to the arena, returning its index.
+     */
+    private int add(Ast ast) {
+        if (ast instanceof Ast.Source) {
+            Ast.Source source = (Ast.Source) ast;
+            int[] fields = addAll(source.getFields());
+            int[] methods = addAll(source.getMethods());
+            return node(SOURCE, concat(list(fields), list(methods)));
+        } else if (ast instanceof Ast.Field) {
+            Ast.Field field = (Ast.Field) ast;
+            return node(FIELD, constant(field.getName()), constant(field.getTypeName()), addOptional(field.getValue()));
+        } else if (ast instanceof Ast.Method) {
+            Ast.Method method = (Ast.Method) ast;
+            int[] parameters = new int[method.getParameters().size() * 2];
+            for (int i = 0; i < method.getParameters().size(); i++) {
+                parameters[i * 2] = constant(method.getParameters().get(i));
+                parameters[i * 2 + 1] = constant(method.getParameterTypeNames().get(i));
+            }
+            int[] statements = addAll(method.getStatements());
+            int[] operands = {constant(method.getName()), constant(method.getReturnTypeName().orElse(null)), parameters.length / 2};
+            return node(METHOD, concat(operands, parameters, list(statements)));
+        } else if (ast instanceof Ast.Stmt.Expression) {
+            return node(EXPRESSION, add(((Ast.Stmt.Expression) ast).getExpression()));
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+            return node(DECLARATION, constant(declaration.getName()), constant(declaration.getTypeName().orElse(null)),
+                    addOptional(declaration.getValue()));
+        } else if (ast instanceof Ast.Stmt.Assignment) {
+            Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) ast;
+            int receiver = add(assignment.getReceiver());
+            return node(ASSIGNMENT, receiver, add(assignment.getValue()));
+        } else if (ast instanceof Ast.Stmt.If) {
+            Ast.Stmt.If stmt = (Ast.Stmt.If) ast;
+            int condition = add(stmt.getCondition());
+            int[] thenStatements = addAll(stmt.getThenStatements());
+            int[] elseStatements = addAll(stmt.getElseStatements());
+            return node(IF, concat(new int[] {condition}, list(thenStatements), list(elseStatements)));
+        } else if (ast instanceof Ast.Stmt.For) {
+            Ast.Stmt.For stmt = (Ast.Stmt.For) ast;
+            int value = add(stmt.getValue());
+            int[] statements = addAll(stmt.getStatements());
+            return node(FOR, concat(new int[] {constant(stmt.getName()), value}, list(statements)));
+        } else if (ast instanceof Ast.Stmt.While) {
+            Ast.Stmt.While stmt = (Ast.Stmt.While) ast;
+            int condition = add(stmt.getCondition());
+            int[] statements = addAll(stmt.getStatements());
+            return node(WHILE, concat(new int[] {condition}, list(statements)));
+        } else if (ast instanceof Ast.Stmt.Return) {
+            return node(RETURN, add(((Ast.Stmt.Return) ast).getValue()));
+        } else if (ast instanceof Ast.Expr.Literal) {
+            return node(LITERAL, constant(((Ast.Expr.Literal) ast).getLiteral()));
+        } else if (ast instanceof Ast.Expr.Group) {
+            return node(GROUP, add(((Ast.Expr.Group) ast).getExpression()));
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            int left = add(binary.getLeft());
+            int right = add(binary.getRight());
+            return node(BINARY, constant(binary.getOperator()), left, right);
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            return node(ACCESS, constant(access.getName()), addOptional(access.getReceiver()));
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            int receiver = addOptional(function.getReceiver());
+            int[] arguments = addAll(function.getArguments());
+            return node(FUNCTION, concat(new int[] {constant(function.getName()), receiver}, list(arguments)));
+        } else {
+            throw new AssertionError(ast.getClass());
+        }
+    }
+
+    private int[] addAll(List<? extends Ast> asts) {
+        int[] nodes = new int[asts.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = add(asts.get(i));
+        }
+        return nodes;
+    }
+
+    private int addOptional(Optional<Ast.Expr> ast) {
+        return ast.isPresent() ? add(ast.get()) : NONE;
+    }
+
+    private static int[] list(int[] elements) {
+        int[] list = new int[elements.length + 1];
+        list[0] = elements.length;
+        System.arraycopy(elements, 0, list, 1, elements.length);
+        return list;
+    }
+
+    private static int[] concat(int[]... arrays) {
+        int length = 0;
+        for (int[] array : arrays) {
+            length += array.length;
+        }
+        int[] result = new int[length];
+        int offset = 0;
+        for (int[] array : arrays) {
+            System.arraycopy(array, 0, result, offset, array.length);
+            offset += array.length;
+        }
+        return result;
+    }
+
+    private int node(int kind, int... operands) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        if (length + operands.length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + operands.length));
+        }
+        kinds[size] = (byte) kind;
+        offsets[size] = length;
+        System.arraycopy(operands, 0, data, length, operands.length);
+        length += operands.length;
+        return size++;
+    }
+
+    /**
+     * Returns the index of the constant in the pool, adding it if there is no
+     * equal constant yet. Null is not pooled and is always {@link #NONE}.
+     */
+    private int constant(Object value) {
+        if (value == null) {
+            return NONE;
+        }
+        Integer index = pool.get(value);
+        if (index == null) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            index = constantCount++;
+            pool.put(value, index);
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,249 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Caches parsed sources in a binary file next to the source file, so that an
+ * unchanged source can be loaded without the {@link Lexer} and {@link Parser}.
+ * The cache for {@code script.plc} is {@code script.plc.ast}.
+ *
+ * The file holds an {@link AstArena} in the following format, with all numbers
+ * big-endian:
+ *
+ *  - the magic number {@code PLCA} and the {@link #VERSION} of the format;
+ *  - the SHA-256 hash of the source's UTF-8 bytes;
+ *  - the number of nodes, of operands, and of constants;
+ *  - the kind byte of each node, then the offset of each node, then the
+ *    operands;
+ *  - each constant, as a tag byte followed by its value.
+ *
+ * A cache is only used if its magic number, version and hash all match, and a
+ * cache which is stale or cannot be read is replaced by parsing the source.
+ */
+public final class AstCache {
+
+    /**
+     * The version of the format, which must be incremented whenever the
+     * format or the {@link AstArena} layout changes.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x504C4341;
+    private static final int HASH_LENGTH = 32;
+    private static final String EXTENSION = ".ast";
+
+    private static final byte STRING = 0;
+    private static final byte CHARACTER = 1;
+    private static final byte INTEGER = 2;
+    private static final byte DECIMAL = 3;
+    private static final byte BOOLEAN = 4;
+
+    private AstCache() {}
+
+    /**
+     * Returns the path of the cache for the source file.
+     */
+    public static Path getCachePath(Path source) {
+        return source.resolveSibling(source.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Loads the source file, from its cache if the cache is up to date and
+     * otherwise by lexing and parsing it and writing a new cache. A cache which
+     * cannot be converted back into an AST is treated as stale, and a cache
+     * which cannot be written is ignored since the source has been parsed.
+     */
+    public static Ast.Source load(Path source) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(source);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] hash = hash(bytes);
+        Path cache = getCachePath(source);
+        Optional<AstArena> cached = read(cache, hash);
+        if (cached.isPresent()) {
+            try {
+                return cached.get().toAst();
+            } catch (RuntimeException ignored) {}
+        }
+        Ast.Source ast = new Parser(new Lexer(new String(bytes, StandardCharsets.UTF_8)).lex()).parseSource();
+        try {
+            write(cache, hash, AstArena.of(ast));
+        } catch (IOException ignored) {}
+        return ast;
+    }
+
+    /**
+     * Returns the SHA-256 hash of the source's bytes.
+     */
+    public static byte[] hash(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Reads the cache by mapping it into memory, returning an empty optional
+     * if it does not exist, was written for another hash or version, or is
+     * malformed.
+     */
+    public static Optional<AstArena> read(Path cache, byte[] hash) {
+        if (!Files.isRegularFile(cache)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return Optional.ofNullable(decode(buffer, hash));
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes the cache to a temporary file which then replaces the cache, so
+     * a concurrent reader never sees a partially written cache.
+     */
+    public static void write(Path cache, byte[] hash, AstArena arena) throws IOException {
+        Path temporary = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, encode(hash, arena).array());
+            Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    static ByteBuffer encode(byte[] hash, AstArena arena) {
+        byte[] kinds = arena.getKinds();
+        int[] offsets = arena.getOffsets();
+        int[] data = arena.getData();
+        Object[] constants = arena.getConstants();
+        byte[][] encoded = new byte[constants.length][];
+        int length = 4 + 4 + HASH_LENGTH + 4 * 3 + kinds.length + 4 * offsets.length + 4 * data.length;
+        for (int i = 0; i < constants.length; i++) {
+            encoded[i] = encode(constants[i]);
+            length += encoded[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(MAGIC).putInt(VERSION).put(hash);
+        buffer.putInt(kinds.length).putInt(data.length).putInt(constants.length);
+        buffer.put(kinds);
+        buffer.asIntBuffer().put(offsets);
+        buffer.position(buffer.position() + 4 * offsets.length);
+        buffer.asIntBuffer().put(data);
+        buffer.position(buffer.position() + 4 * data.length);
+        for (byte[] constant : encoded) {
+            buffer.put(constant);
+        }
+        return buffer;
+    }
+
+    /**
+     * Decodes the arena, or returns null if the buffer was written for another
+     * hash or version.
+     */
+    static AstArena decode(ByteBuffer buffer, byte[] hash) {
+        if (buffer.remaining() < 8 + HASH_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        byte[] stored = new byte[HASH_LENGTH];
+        buffer.get(stored);
+        if (!Arrays.equals(stored, hash)) {
+            return null;
+        }
+        int size = buffer.getInt();
+        int length = buffer.getInt();
+        int count = buffer.getInt();
+        if (size < 0 || length < 0 || count < 0 || 5L * size + 4L * length + 5L * count > buffer.remaining()) {
+            throw new IllegalStateException("Invalid node, operand or constant count.");
+        }
+        byte[] kinds = new byte[size];
+        int[] offsets = new int[size];
+        int[] data = new int[length];
+        Object[] constants = new Object[count];
+        buffer.get(kinds);
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + 4 * offsets.length);
+        buffer.asIntBuffer().get(data);
+        buffer.position(buffer.position() + 4 * data.length);
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = decode(buffer);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IllegalStateException("Unexpected data after the last constant.");
+        }
+        return new AstArena(kinds, offsets, data, constants);
+    }
+
+    private static byte[] encode(Object constant) {
+        byte tag;
+        byte[] bytes;
+        if (constant instanceof String) {
+            tag = STRING;
+            bytes = ((String) constant).getBytes(StandardCharsets.UTF_8);
+        } else if (constant instanceof Character) {
+            tag = CHARACTER;
+            bytes = new byte[] {(byte) ((Character) constant >> 8), (byte) (char) constant};
+        } else if (constant instanceof BigInteger) {
+            tag = INTEGER;
+            bytes = ((BigInteger) constant).toByteArray();
+        } else if (constant instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) constant;
+            tag = DECIMAL;
+            byte[] unscaled = decimal.unscaledValue().toByteArray();
+            bytes = ByteBuffer.allocate(4 + unscaled.length).putInt(decimal.scale()).put(unscaled).array();
+        } else if (constant instanceof Boolean) {
+            tag = BOOLEAN;
+            bytes = new byte[] {(byte) ((Boolean) constant ? 1 : 0)};
+        } else {
+            throw new IllegalArgumentException("Unsupported constant of type " + constant.getClass().getName() + ".");
+        }
+        return ByteBuffer.allocate(1 + 4 + bytes.length).put(tag).putInt(bytes.length).put(bytes).array();
+    }
+
+    private static Object decode(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalStateException("Invalid constant length " + length + ".");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        switch (tag) {
+            case STRING:
+                return new String(bytes, StandardCharsets.UTF_8);
+            case CHARACTER:
+                return ByteBuffer.wrap(bytes).getChar();
+            case INTEGER:
+                return new BigInteger(bytes);
+            case DECIMAL:
+                ByteBuffer decimal = ByteBuffer.wrap(bytes);
+                int scale = decimal.getInt();
+                return new BigDecimal(new BigInteger(Arrays.copyOfRange(bytes, 4, bytes.length)), scale);
+            case BOOLEAN:
+                return bytes[0] != 0;
+            default:
+                throw new IllegalStateException("Unknown constant tag " + tag + ".");
+        }
+    }
+
+}
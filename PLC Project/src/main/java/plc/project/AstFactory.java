@@ -0,0 +1,219 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Creates {@link Ast.Expr} nodes, optionally hash-consing them so that
+ * structurally equal expressions are the same object. Since the children of a
+ * node are created first, they are already shared, and a node is looked up by
+ * its own fields plus the identity of its children.
+ *
+ * The {@link Analyzer} annotates expressions in place, so a shared node must
+ * get the same annotation at every occurrence. The type of a literal only
+ * depends on its value, and the annotations of the other nodes only depend on
+ * their children and on what their names refer to. Functions without a
+ * receiver are always methods of the source, but a variable may be shadowed,
+ * so the parser reports each declaration with {@link #declare(String)} and
+ * each block with {@link #enterScope()} and {@link #exitScope()}. Each
+ * declaration gets a new binding of its name, and an {@link Ast.Expr.Access}
+ * without a receiver is only shared with others of the same binding, which
+ * then refer to the same declaration.
+ *
+ * The nodes of a shared tree must not be replaced by rewriting one occurrence,
+ * and the factory is not thread safe.
+ */
+public final class AstFactory {
+
+    /**
+     * A factory which creates a new node every time.
+     */
+    static final AstFactory UNSHARED = new AstFactory(false);
+
+    private static final int LITERAL = 0;
+    private static final int GROUP = 1;
+    private static final int BINARY = 2;
+    private static final int ACCESS = 3;
+    private static final int FUNCTION = 4;
+
+    private final boolean sharing;
+    private final Map<Key, Ast.Expr> nodes = new HashMap<>();
+    private final Map<String, Integer> bindings = new HashMap<>();
+
+    /**
+     * The previous binding of each name declared in each open scope, or null
+     * if the name was not declared before.
+     */
+    private final Deque<Map<String, Integer>> scopes = new ArrayDeque<>();
+    private int nextBinding = 1;
+    private int requests = 0;
+
+    public AstFactory() {
+        this(true);
+    }
+
+    private AstFactory(boolean sharing) {
+        this.sharing = sharing;
+    }
+
+    /**
+     * Returns the number of distinct nodes created.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the number of nodes requested, including shared ones.
+     */
+    public int getRequests() {
+        return requests;
+    }
+
+    public Ast.Expr.Literal literal(Object literal) {
+        if (!sharing) {
+            return new Ast.Expr.Literal(literal);
+        }
+        return (Ast.Expr.Literal) intern(new Key(LITERAL, literal, 0), () -> new Ast.Expr.Literal(literal));
+    }
+
+    public Ast.Expr.Group group(Ast.Expr expression) {
+        if (!sharing) {
+            return new Ast.Expr.Group(expression);
+        }
+        return (Ast.Expr.Group) intern(new Key(GROUP, null, 0, expression), () -> new Ast.Expr.Group(expression));
+    }
+
+    public Ast.Expr.Binary binary(String operator, Ast.Expr left, Ast.Expr right) {
+        if (!sharing) {
+            return new Ast.Expr.Binary(operator, left, right);
+        }
+        return (Ast.Expr.Binary) intern(new Key(BINARY, operator, 0, left, right), () -> new Ast.Expr.Binary(operator, left, right));
+    }
+
+    public Ast.Expr.Access access(Optional<Ast.Expr> receiver, String name) {
+        if (!sharing) {
+            return new Ast.Expr.Access(receiver, name);
+        }
+        int binding = receiver.isPresent() ? 0 : bindings.getOrDefault(name, 0);
+        return (Ast.Expr.Access) intern(new Key(ACCESS, name, binding, receiver.orElse(null)), () -> new Ast.Expr.Access(receiver, name));
+    }
+
+    public Ast.Expr.Function function(Optional<Ast.Expr> receiver, String name, List<Ast.Expr> arguments) {
+        if (!sharing) {
+            return new Ast.Expr.Function(receiver, name, arguments);
+        }
+        Object[] children = new Object[arguments.size() + 1];
+        children[0] = receiver.orElse(null);
+        for (int i = 0; i < arguments.size(); i++) {
+            children[i + 1] = arguments.get(i);
+        }
+        return (Ast.Expr.Function) intern(new Key(FUNCTION, name, 0, children), () -> new Ast.Expr.Function(receiver, name, arguments));
+    }
+
+    /**
+     * Starts a block, whose declarations end at the matching {@link
+     * #exitScope()}.
+     */
+    public void enterScope() {
+        if (sharing) {
+            scopes.push(new HashMap<>());
+        }
+    }
+
+    /**
+     * Ends the innermost block, restoring the bindings its declarations
+     * shadowed.
+     */
+    public void exitScope() {
+        if (sharing) {
+            for (Map.Entry<String, Integer> entry : scopes.pop().entrySet()) {
+                if (entry.getValue() == null) {
+                    bindings.remove(entry.getKey());
+                } else {
+                    bindings.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Declares the variable in the innermost block, so that accesses to it
+     * from here on are not shared with accesses to any other declaration.
+     */
+    public void declare(String name) {
+        if (sharing) {
+            Integer previous = bindings.put(name, nextBinding++);
+            if (!scopes.isEmpty() && !scopes.peek().containsKey(name)) {
+                scopes.peek().put(name, previous);
+            }
+        }
+    }
+
+    private Ast.Expr intern(Key key, Supplier<Ast.Expr> constructor) {
+        requests++;
+        Ast.Expr node = nodes.get(key);
+        if (node == null) {
+            node = constructor.get();
+            nodes.put(key, node);
+        }
+        return node;
+    }
+
+    /**
+     * The fields of a node, with its children compared by identity. Literal
+     * values are compared with equals, which also compares their class and,
+     * for decimals, their scale.
+     */
+    private static final class Key {
+
+        private final int kind;
+        private final Object value;
+        private final int binding;
+        private final Object[] children;
+        private final int hash;
+
+        private Key(int kind, Object value, int binding, Object... children) {
+            this.kind = kind;
+            this.value = value;
+            this.binding = binding;
+            this.children = children;
+            int hash = 31 * (31 * kind + Objects.hashCode(value)) + binding;
+            for (Object child : children) {
+                hash = 31 * hash + System.identityHashCode(child);
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (kind != other.kind || binding != other.binding || !Objects.equals(value, other.value)
+                    || children.length != other.children.length) {
+                return false;
+            }
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] != other.children[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
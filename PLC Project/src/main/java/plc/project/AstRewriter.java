@@ -0,0 +1,449 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A visitor returning a rewritten copy of the tree, which optimization passes
+ * extend by overriding the methods for the nodes they change. By default each
+ * node is rebuilt from its rewritten children, and the node itself is returned
+ * if none of them changed, so unchanged subtrees (including ones shared by an
+ * {@link AstFactory}) are never copied.
+ *
+ * Rewriting runs after the {@link Analyzer}, so a rebuilt node gets the
+ * variable, function or type of the node it replaces with {@link
+ * #annotate(Ast, Ast)}. A tree which has not been analyzed can be rewritten
+ * too, and then has no annotations to copy.
+ *
+ * Statements are rewritten a block at a time through {@link
+ * #rewriteBlock(List)}, which passes each statement to {@link
+ * #rewriteStatement(Ast.Stmt, List)} so that a pass can replace a statement
+ * with any number of statements.
+ */
+public class AstRewriter implements Ast.Visitor<Ast> {
+
+    public Ast.Expr rewrite(Ast.Expr expr) {
+        return (Ast.Expr) visit(expr);
+    }
+
+    public Ast.Stmt rewrite(Ast.Stmt stmt) {
+        return (Ast.Stmt) visit(stmt);
+    }
+
+    /**
+     * Rewrites the statements of a block, returning the same list if none of
+     * them changed.
+     */
+    public List<Ast.Stmt> rewriteBlock(List<Ast.Stmt> statements) {
+        List<Ast.Stmt> block = new ArrayList<>(statements.size());
+        for (Ast.Stmt statement : statements) {
+            rewriteStatement(statement, block);
+        }
+        return same(block, statements) ? statements : block;
+    }
+
+    /**
+     * Adds the statements replacing {@code statement} to the block.
+     */
+    protected void rewriteStatement(Ast.Stmt statement, List<Ast.Stmt> block) {
+        block.add(rewrite(statement));
+    }
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        List<Ast.Field> fields = new ArrayList<>(ast.getFields().size());
+        for (Ast.Field field : ast.getFields()) {
+            fields.add(visit(field));
+        }
+        List<Ast.Method> methods = new ArrayList<>(ast.getMethods().size());
+        for (Ast.Method method : ast.getMethods()) {
+            methods.add(visit(method));
+        }
+        if (same(fields, ast.getFields()) && same(methods, ast.getMethods())) {
+            return ast;
+        }
+        return new Ast.Source(fields, methods);
+    }
+
+    @Override
+    public Ast.Field visit(Ast.Field ast) {
+        Optional<Ast.Expr> value = rewrite(ast.getValue());
+        if (value == ast.getValue()) {
+            return ast;
+        }
+        return annotate(new Ast.Field(ast.getName(), ast.getTypeName(), value), ast);
+    }
+
+    @Override
+    public Ast.Method visit(Ast.Method ast) {
+        List<Ast.Stmt> statements = rewriteBlock(ast.getStatements());
+        if (statements == ast.getStatements()) {
+            return ast;
+        }
+        return annotate(new Ast.Method(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(),
+                ast.getReturnTypeName(), statements), ast);
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Expression ast) {
+        Ast.Expr expression = rewrite(ast.getExpression());
+        if (expression == ast.getExpression()) {
+            return ast;
+        }
+        return new Ast.Stmt.Expression(expression);
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Declaration ast) {
+        Optional<Ast.Expr> value = rewrite(ast.getValue());
+        if (value == ast.getValue()) {
+            return ast;
+        }
+        return annotate(new Ast.Stmt.Declaration(ast.getName(), ast.getTypeName(), value), ast);
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Assignment ast) {
+        Ast.Expr receiver = rewriteReceiver(ast.getReceiver());
+        Ast.Expr value = rewrite(ast.getValue());
+        if (receiver == ast.getReceiver() && value == ast.getValue()) {
+            return ast;
+        }
+        return new Ast.Stmt.Assignment(receiver, value);
+    }
+
+    /**
+     * Rewrites the receiver of an assignment, which is only rebuilt if it has
+     * a receiver of its own so that a pass replacing variables does not
+     * replace the variable being assigned.
+     */
+    protected Ast.Expr rewriteReceiver(Ast.Expr receiver) {
+        if (receiver instanceof Ast.Expr.Access && ((Ast.Expr.Access) receiver).getReceiver().isPresent()) {
+            Ast.Expr.Access access = (Ast.Expr.Access) receiver;
+            Ast.Expr object = rewrite(access.getReceiver().get());
+            if (object != access.getReceiver().get()) {
+                return annotate(new Ast.Expr.Access(Optional.of(object), access.getName()), access);
+            }
+        }
+        return receiver;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.If ast) {
+        Ast.Expr condition = rewrite(ast.getCondition());
+        List<Ast.Stmt> thenStatements = rewriteBlock(ast.getThenStatements());
+        List<Ast.Stmt> elseStatements = rewriteBlock(ast.getElseStatements());
+        if (condition == ast.getCondition() && thenStatements == ast.getThenStatements()
+                && elseStatements == ast.getElseStatements()) {
+            return ast;
+        }
+        return new Ast.Stmt.If(condition, thenStatements, elseStatements);
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.For ast) {
+        Ast.Expr value = rewrite(ast.getValue());
+        List<Ast.Stmt> statements = rewriteBlock(ast.getStatements());
+        if (value == ast.getValue() && statements == ast.getStatements()) {
+            return ast;
+        }
+        return new Ast.Stmt.For(ast.getName(), value, statements);
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.While ast) {
+        Ast.Expr condition = rewrite(ast.getCondition());
+        List<Ast.Stmt> statements = rewriteBlock(ast.getStatements());
+        if (condition == ast.getCondition() && statements == ast.getStatements()) {
+            return ast;
+        }
+        return new Ast.Stmt.While(condition, statements);
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Return ast) {
+        Ast.Expr value = rewrite(ast.getValue());
+        if (value == ast.getValue()) {
+            return ast;
+        }
+        return new Ast.Stmt.Return(value);
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Literal ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Group ast) {
+        Ast.Expr expression = rewrite(ast.getExpression());
+        if (expression == ast.getExpression()) {
+            return ast;
+        }
+        return annotate(new Ast.Expr.Group(expression), ast);
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Binary ast) {
+        Ast.Expr left = rewrite(ast.getLeft());
+        Ast.Expr right = rewrite(ast.getRight());
+        if (left == ast.getLeft() && right == ast.getRight()) {
+            return ast;
+        }
+        return annotate(new Ast.Expr.Binary(ast.getOperator(), left, right), ast);
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Access ast) {
+        Optional<Ast.Expr> receiver = rewrite(ast.getReceiver());
+        if (receiver == ast.getReceiver()) {
+            return ast;
+        }
+        return annotate(new Ast.Expr.Access(receiver, ast.getName()), ast);
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Function ast) {
+        Optional<Ast.Expr> receiver = rewrite(ast.getReceiver());
+        List<Ast.Expr> arguments = new ArrayList<>(ast.getArguments().size());
+        for (Ast.Expr argument : ast.getArguments()) {
+            arguments.add(rewrite(argument));
+        }
+        if (receiver == ast.getReceiver() && same(arguments, ast.getArguments())) {
+            return ast;
+        }
+        return annotate(new Ast.Expr.Function(receiver, ast.getName(), arguments), ast);
+    }
+
+    /**
+     * Rewrites an optional expression, returning the same optional if the
+     * expression did not change.
+     */
+    protected Optional<Ast.Expr> rewrite(Optional<Ast.Expr> expr) {
+        if (!expr.isPresent()) {
+            return expr;
+        }
+        Ast.Expr rewritten = rewrite(expr.get());
+        return rewritten == expr.get() ? expr : Optional.of(rewritten);
+    }
+
+    /**
+     * Copies the annotation the {@link Analyzer} set on {@code original}, if
+     * any, onto {@code node}, which must be of the same class or an
+     * expression of the same type.
+     */
+    static <T extends Ast> T annotate(T node, Ast original) {
+        if (node instanceof Ast.Field) {
+            Environment.Variable variable = annotation(((Ast.Field) original)::getVariable);
+            ((Ast.Field) node).setVariable(variable);
+        } else if (node instanceof Ast.Method) {
+            Environment.Function function = annotation(((Ast.Method) original)::getFunction);
+            ((Ast.Method) node).setFunction(function);
+        } else if (node instanceof Ast.Stmt.Declaration) {
+            Environment.Variable variable = annotation(((Ast.Stmt.Declaration) original)::getVariable);
+            ((Ast.Stmt.Declaration) node).setVariable(variable);
+        } else if (node instanceof Ast.Expr.Access) {
+            Environment.Variable variable = annotation(((Ast.Expr.Access) original)::getVariable);
+            ((Ast.Expr.Access) node).setVariable(variable);
+        } else if (node instanceof Ast.Expr.Function) {
+            Environment.Function function = annotation(((Ast.Expr.Function) original)::getFunction);
+            ((Ast.Expr.Function) node).setFunction(function);
+        } else if (node instanceof Ast.Expr) {
+            setType((Ast.Expr) node, annotation(((Ast.Expr) original)::getType));
+        }
+        return node;
+    }
+
+    /**
+     * Sets the type of a literal, group or binary expression, whose type is
+     * not derived from a variable or function.
+     */
+    static void setType(Ast.Expr expr, Environment.Type type) {
+        if (expr instanceof Ast.Expr.Literal) {
+            ((Ast.Expr.Literal) expr).setType(type);
+        } else if (expr instanceof Ast.Expr.Group) {
+            ((Ast.Expr.Group) expr).setType(type);
+        } else if (expr instanceof Ast.Expr.Binary) {
+            ((Ast.Expr.Binary) expr).setType(type);
+        }
+    }
+
+    /**
+     * Returns the annotation, or null if the {@link Analyzer} has not set it,
+     * which the getters of {@link Ast} report by throwing.
+     */
+    static <T> T annotation(Supplier<T> getter) {
+        try {
+            return getter.get();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if both lists hold the same nodes.
+     */
+    static boolean same(List<?> rewritten, List<?> original) {
+        if (rewritten.size() != original.size()) {
+            return false;
+        }
+        for (int i = 0; i < rewritten.size(); i++) {
+            if (rewritten.get(i) != original.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns every name used in the tree, whether of a field, method,
+     * parameter, variable or function, so that a pass can pick names for the
+     * variables it introduces with {@link #fresh(String, Set)}.
+     */
+    static Set<String> getNames(Ast ast) {
+        Set<String> names = new HashSet<>();
+        new AstRewriter() {
+            @Override
+            public Ast.Field visit(Ast.Field ast) {
+                names.add(ast.getName());
+                return super.visit(ast);
+            }
+
+            @Override
+            public Ast.Method visit(Ast.Method ast) {
+                names.add(ast.getName());
+                names.addAll(ast.getParameters());
+                return super.visit(ast);
+            }
+
+            @Override
+            public Ast.Stmt visit(Ast.Stmt.Declaration ast) {
+                names.add(ast.getName());
+                return super.visit(ast);
+            }
+
+            @Override
+            public Ast.Stmt visit(Ast.Stmt.Assignment ast) {
+                visit(ast.getReceiver());
+                return super.visit(ast);
+            }
+
+            @Override
+            public Ast.Stmt visit(Ast.Stmt.For ast) {
+                names.add(ast.getName());
+                return super.visit(ast);
+            }
+
+            @Override
+            public Ast.Expr visit(Ast.Expr.Access ast) {
+                names.add(ast.getName());
+                return super.visit(ast);
+            }
+
+            @Override
+            public Ast.Expr visit(Ast.Expr.Function ast) {
+                names.add(ast.getName());
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        return names;
+    }
+
+    /**
+     * Returns the first of {@code prefix0}, {@code prefix1}, ... which is not
+     * in {@code names}, and adds it.
+     */
+    static String fresh(String prefix, Set<String> names) {
+        for (int i = 0; ; i++) {
+            if (names.add(prefix + i)) {
+                return prefix + i;
+            }
+        }
+    }
+
+    /**
+     * Renames variables of a subtree (those of an inlined method, or those a
+     * spliced block declares), and replaces variables by expressions when
+     * those are given, for the {@link Inliner} and {@link DeadCodeEliminator}.
+     * Declarations and accesses of other names are kept.
+     */
+    static final class Renamer extends AstRewriter {
+
+        private final Map<String, String> renames;
+        private final Map<String, Ast.Expr> arguments;
+
+        /**
+         * The variables given to the renamed names, overriding the renamed
+         * annotation of the original variable.
+         */
+        final Map<String, Environment.Variable> parameters = new HashMap<>();
+
+        private final Map<Environment.Variable, Environment.Variable> variables = new IdentityHashMap<>();
+
+        Renamer(Map<String, String> renames, Map<String, Ast.Expr> arguments) {
+            this.renames = renames;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public Ast.Stmt visit(Ast.Stmt.Declaration ast) {
+            Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(renames.getOrDefault(ast.getName(), ast.getName()), ast.getTypeName(), rewrite(ast.getValue()));
+            declaration.setVariable(rename(annotation(ast::getVariable)));
+            return declaration;
+        }
+
+        @Override
+        public Ast.Stmt visit(Ast.Stmt.For ast) {
+            return new Ast.Stmt.For(renames.getOrDefault(ast.getName(), ast.getName()), rewrite(ast.getValue()), rewriteBlock(ast.getStatements()));
+        }
+
+        @Override
+        protected Ast.Expr rewriteReceiver(Ast.Expr receiver) {
+            if (receiver instanceof Ast.Expr.Access && !((Ast.Expr.Access) receiver).getReceiver().isPresent()) {
+                return visit((Ast.Expr.Access) receiver);
+            }
+            return super.rewriteReceiver(receiver);
+        }
+
+        @Override
+        public Ast.Expr visit(Ast.Expr.Access ast) {
+            if (!ast.getReceiver().isPresent()) {
+                if (arguments.containsKey(ast.getName())) {
+                    return arguments.get(ast.getName());
+                } else if (renames.containsKey(ast.getName())) {
+                    Ast.Expr.Access access = new Ast.Expr.Access(Optional.empty(), renames.get(ast.getName()));
+                    access.setVariable(parameters.containsKey(ast.getName()) ? parameters.get(ast.getName())
+                            : rename(annotation(ast::getVariable)));
+                    return access;
+                }
+            }
+            return super.visit(ast);
+        }
+
+        /**
+         * Returns the variable for a renamed name, the same for every node of
+         * the original variable, or the variable itself if it is not renamed.
+         */
+        Environment.Variable rename(Environment.Variable variable) {
+            if (variable == null || !renames.containsKey(variable.getName())) {
+                return variable;
+            }
+            Environment.Variable renamed = variables.get(variable);
+            if (renamed == null) {
+                String name = renames.get(variable.getName());
+                renamed = new Environment.Variable(name, name, variable.getType(), Environment.NIL);
+                variables.put(variable, renamed);
+            }
+            return renamed;
+        }
+
+    }
+
+}
@@ -0,0 +1,419 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Evaluates a subexpression which is repeated in a sequence of statements only
+ * once, by declaring a temporary ({@code cse0}, {@code cse1}, ...) holding its
+ * value before the first statement using it and reading the temporary instead.
+ *
+ * Only binary expressions and calls which are pure according to {@link
+ * Effects} are merged, which means they only read local variables (and fields
+ * of the objects they hold) and call pure methods. A sequence of statements is
+ * a run of the statements of one block which are not {@code IF}, {@code FOR}
+ * or {@code WHILE} statements, and a repeated expression stops being available
+ * after a statement which assigns or declares a variable it reads. An
+ * expression reading a field of an object, such as {@code a.length +
+ * b.length}, also stops being available after a statement assigning a field
+ * and before a statement calling an impure method, either of which may change
+ * the field, and is not merged within such a calling statement.
+ *
+ * Since the temporary is evaluated before the whole statement, the first use
+ * must be one the statement always evaluates and must come before any impure
+ * call in it, so that neither short circuiting (such as the right side of
+ * {@code x != 0 AND y / x > 1}) nor the order of effects changes. Later uses
+ * may be anywhere. When repeated expressions are nested, the largest is merged
+ * first.
+ */
+public final class CommonSubexpressionEliminator extends AstRewriter {
+
+    /**
+     * A repeated expression of a sequence, used from {@code first} to {@code
+     * last} (inclusive).
+     */
+    private static final class Candidate {
+
+        private final Ast.Expr expr;
+        private final int size;
+        private final int first;
+        private final Set<String> reads = new HashSet<>();
+        private final boolean readsFields;
+        private int last;
+        private int uses = 1;
+
+        private Candidate(Ast.Expr expr, int first) {
+            this.expr = expr;
+            this.size = size(expr);
+            this.first = first;
+            this.last = first;
+            Effects.addReads(expr, reads);
+            this.readsFields = Effects.readsFields(expr);
+        }
+
+    }
+
+    private Effects effects;
+    private Set<String> names = new HashSet<>();
+    private Set<String> locals = Collections.emptySet();
+
+    /**
+     * The best candidate among those no longer available, while searching.
+     */
+    private Candidate best;
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        effects = Effects.of(ast);
+        names = getNames(ast);
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast.Method visit(Ast.Method ast) {
+        locals = effects != null ? effects.getLocals(ast) : Collections.<String>emptySet();
+        try {
+            return super.visit(ast);
+        } finally {
+            locals = Collections.emptySet();
+        }
+    }
+
+    @Override
+    public List<Ast.Stmt> rewriteBlock(List<Ast.Stmt> statements) {
+        List<Ast.Stmt> block = super.rewriteBlock(statements);
+        List<Ast.Stmt> rewritten = new ArrayList<>(block.size());
+        int start = 0;
+        for (int i = 0; i <= block.size(); i++) {
+            if (i == block.size() || !isStraight(block.get(i))) {
+                rewritten.addAll(eliminate(block.subList(start, i)));
+                if (i < block.size()) {
+                    rewritten.add(block.get(i));
+                }
+                start = i + 1;
+            }
+        }
+        return same(rewritten, block) ? block : rewritten;
+    }
+
+    private List<Ast.Stmt> eliminate(List<Ast.Stmt> sequence) {
+        List<Ast.Stmt> statements = new ArrayList<>(sequence);
+        for (Candidate candidate = findCandidate(statements); candidate != null; candidate = findCandidate(statements)) {
+            Ast.Expr expr = candidate.expr;
+            String name = fresh("cse", names);
+            Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(name, Optional.of(expr));
+            Environment.Type type = annotation(expr::getType);
+            Environment.Variable variable = type != null ? new Environment.Variable(name, name, type, Environment.NIL) : null;
+            declaration.setVariable(variable);
+            String key = key(expr);
+            AstRewriter replacer = new AstRewriter() {
+                @Override
+                public Ast.Expr visit(Ast.Expr.Binary ast) {
+                    return key(ast).equals(key) ? access(name, variable) : super.visit(ast);
+                }
+
+                @Override
+                public Ast.Expr visit(Ast.Expr.Function ast) {
+                    return key(ast).equals(key) ? access(name, variable) : super.visit(ast);
+                }
+            };
+            for (int i = candidate.first; i <= candidate.last; i++) {
+                statements.set(i, replacer.rewrite(statements.get(i)));
+            }
+            statements.add(candidate.first, declaration);
+        }
+        return statements;
+    }
+
+    /**
+     * Returns the largest expression used more than once in the statements,
+     * or null if there is none.
+     */
+    private Candidate findCandidate(List<Ast.Stmt> statements) {
+        Map<String, Candidate> available = new LinkedHashMap<>();
+        best = null;
+        for (int i = 0; i < statements.size(); i++) {
+            Ast.Stmt statement = statements.get(i);
+            boolean calls = callsImpure(statement);
+            if (calls) {
+                killFieldReads(available);
+            }
+            Walk walk = new Walk(available, i, !calls);
+            String killed = null;
+            boolean assignsField = false;
+            if (statement instanceof Ast.Stmt.Expression) {
+                walk.walk(((Ast.Stmt.Expression) statement).getExpression(), false);
+            } else if (statement instanceof Ast.Stmt.Declaration) {
+                Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) statement;
+                if (declaration.getValue().isPresent()) {
+                    walk.walk(declaration.getValue().get(), false);
+                }
+                killed = declaration.getName();
+            } else if (statement instanceof Ast.Stmt.Assignment) {
+                Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) statement;
+                if (assignment.getReceiver() instanceof Ast.Expr.Access) {
+                    Ast.Expr.Access receiver = (Ast.Expr.Access) assignment.getReceiver();
+                    if (receiver.getReceiver().isPresent()) {
+                        walk.walk(receiver.getReceiver().get(), false);
+                        assignsField = true;
+                    } else {
+                        killed = receiver.getName();
+                    }
+                }
+                walk.walk(assignment.getValue(), false);
+            } else if (statement instanceof Ast.Stmt.Return) {
+                walk.walk(((Ast.Stmt.Return) statement).getValue(), false);
+            }
+            if (killed != null) {
+                for (Iterator<Candidate> iterator = available.values().iterator(); iterator.hasNext(); ) {
+                    Candidate candidate = iterator.next();
+                    if (candidate.reads.contains(killed)) {
+                        best = better(best, candidate);
+                        iterator.remove();
+                    }
+                }
+            }
+            if (assignsField) {
+                killFieldReads(available);
+            }
+        }
+        for (Candidate candidate : available.values()) {
+            best = better(best, candidate);
+        }
+        return best;
+    }
+
+    private void killFieldReads(Map<String, Candidate> available) {
+        for (Iterator<Candidate> iterator = available.values().iterator(); iterator.hasNext(); ) {
+            Candidate candidate = iterator.next();
+            if (candidate.readsFields) {
+                best = better(best, candidate);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the statement, which is not an {@code IF}, {@code FOR}
+     * or {@code WHILE}, calls an impure method.
+     */
+    private boolean callsImpure(Ast.Stmt statement) {
+        if (statement instanceof Ast.Stmt.Expression) {
+            return callsImpure(((Ast.Stmt.Expression) statement).getExpression());
+        } else if (statement instanceof Ast.Stmt.Declaration) {
+            Optional<Ast.Expr> value = ((Ast.Stmt.Declaration) statement).getValue();
+            return value.isPresent() && callsImpure(value.get());
+        } else if (statement instanceof Ast.Stmt.Assignment) {
+            Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) statement;
+            return callsImpure(assignment.getReceiver()) || callsImpure(assignment.getValue());
+        } else if (statement instanceof Ast.Stmt.Return) {
+            return callsImpure(((Ast.Stmt.Return) statement).getValue());
+        }
+        return true;
+    }
+
+    private boolean callsImpure(Ast.Expr expr) {
+        if (expr instanceof Ast.Expr.Group) {
+            return callsImpure(((Ast.Expr.Group) expr).getExpression());
+        } else if (expr instanceof Ast.Expr.Binary) {
+            return callsImpure(((Ast.Expr.Binary) expr).getLeft()) || callsImpure(((Ast.Expr.Binary) expr).getRight());
+        } else if (expr instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) expr;
+            return access.getReceiver().isPresent() && callsImpure(access.getReceiver().get());
+        } else if (expr instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) expr;
+            if (function.getReceiver().isPresent()
+                    || effects == null || !effects.isPure(function.getName(), function.getArguments().size())) {
+                return true;
+            }
+            for (Ast.Expr argument : function.getArguments()) {
+                if (callsImpure(argument)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Candidate better(Candidate best, Candidate candidate) {
+        if (candidate.uses < 2) {
+            return best;
+        } else if (best == null || candidate.size > best.size
+                || candidate.size == best.size && candidate.first < best.first) {
+            return candidate;
+        }
+        return best;
+    }
+
+    /**
+     * Walks the expressions of one statement in the order they are evaluated,
+     * recording the uses of pure expressions.
+     */
+    private final class Walk {
+
+        private final Map<String, Candidate> available;
+        private final int statement;
+
+        /**
+         * Whether expressions reading fields of objects may be merged in the
+         * statement, which is when it calls no impure method.
+         */
+        private final boolean fields;
+
+        /**
+         * Whether an impure call has been evaluated, after which a use can not
+         * be the first.
+         */
+        private boolean effect = false;
+
+        private Walk(Map<String, Candidate> available, int statement, boolean fields) {
+            this.available = available;
+            this.statement = statement;
+            this.fields = fields;
+        }
+
+        private void walk(Ast.Expr expr, boolean conditional) {
+            if ((expr instanceof Ast.Expr.Binary || expr instanceof Ast.Expr.Function) && effects != null
+                    && effects.isPure(expr, locals)) {
+                use(expr, conditional);
+            }
+            if (expr instanceof Ast.Expr.Group) {
+                walk(((Ast.Expr.Group) expr).getExpression(), conditional);
+            } else if (expr instanceof Ast.Expr.Binary) {
+                Ast.Expr.Binary binary = (Ast.Expr.Binary) expr;
+                boolean shortCircuits = binary.getOperator().equals("AND") || binary.getOperator().equals("OR");
+                walk(binary.getLeft(), conditional);
+                walk(binary.getRight(), conditional || shortCircuits);
+            } else if (expr instanceof Ast.Expr.Access) {
+                Ast.Expr.Access access = (Ast.Expr.Access) expr;
+                if (access.getReceiver().isPresent()) {
+                    walk(access.getReceiver().get(), conditional);
+                }
+            } else if (expr instanceof Ast.Expr.Function) {
+                Ast.Expr.Function function = (Ast.Expr.Function) expr;
+                if (function.getReceiver().isPresent()) {
+                    walk(function.getReceiver().get(), conditional);
+                }
+                for (Ast.Expr argument : function.getArguments()) {
+                    walk(argument, conditional);
+                }
+                if (effects == null || !effects.isPure(expr, locals)) {
+                    effect = true;
+                }
+            }
+        }
+
+        private void use(Ast.Expr expr, boolean conditional) {
+            if (!fields && Effects.readsFields(expr)) {
+                return;
+            }
+            String key = key(expr);
+            Candidate candidate = available.get(key);
+            if (candidate != null) {
+                candidate.uses++;
+                candidate.last = statement;
+            } else if (!conditional && !effect) {
+                available.put(key, new Candidate(expr, statement));
+            }
+        }
+
+    }
+
+    private static Ast.Expr.Access access(String name, Environment.Variable variable) {
+        Ast.Expr.Access access = new Ast.Expr.Access(Optional.empty(), name);
+        access.setVariable(variable);
+        return access;
+    }
+
+    /**
+     * Returns true for the statements of a sequence, which are those without
+     * blocks of their own.
+     */
+    private static boolean isStraight(Ast.Stmt statement) {
+        return statement instanceof Ast.Stmt.Expression || statement instanceof Ast.Stmt.Declaration
+                || statement instanceof Ast.Stmt.Assignment || statement instanceof Ast.Stmt.Return;
+    }
+
+    /**
+     * Returns a string which is equal for structurally equal expressions,
+     * ignoring annotations.
+     */
+    static String key(Ast.Expr expr) {
+        StringBuilder builder = new StringBuilder();
+        key(expr, builder);
+        return builder.toString();
+    }
+
+    private static void key(Ast.Expr expr, StringBuilder builder) {
+        if (expr instanceof Ast.Expr.Literal) {
+            Object literal = ((Ast.Expr.Literal) expr).getLiteral();
+            if (literal == null) {
+                builder.append("N");
+            } else {
+                String value = literal.toString();
+                builder.append("L").append(literal.getClass().getSimpleName()).append(':')
+                        .append(value.length()).append(':').append(value);
+            }
+        } else if (expr instanceof Ast.Expr.Group) {
+            builder.append("G(");
+            key(((Ast.Expr.Group) expr).getExpression(), builder);
+            builder.append(')');
+        } else if (expr instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) expr;
+            builder.append("B").append(binary.getOperator()).append('(');
+            key(binary.getLeft(), builder);
+            builder.append(',');
+            key(binary.getRight(), builder);
+            builder.append(')');
+        } else if (expr instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) expr;
+            builder.append("A(");
+            if (access.getReceiver().isPresent()) {
+                key(access.getReceiver().get(), builder);
+            }
+            builder.append(')').append(access.getName()).append(';');
+        } else if (expr instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) expr;
+            builder.append("F(");
+            if (function.getReceiver().isPresent()) {
+                key(function.getReceiver().get(), builder);
+            }
+            builder.append(')').append(function.getName()).append('(');
+            for (Ast.Expr argument : function.getArguments()) {
+                key(argument, builder);
+                builder.append(',');
+            }
+            builder.append(')');
+        }
+    }
+
+    /**
+     * Returns the number of nodes of the expression.
+     */
+    static int size(Ast.Expr expr) {
+        if (expr instanceof Ast.Expr.Group) {
+            return 1 + size(((Ast.Expr.Group) expr).getExpression());
+        } else if (expr instanceof Ast.Expr.Binary) {
+            return 1 + size(((Ast.Expr.Binary) expr).getLeft()) + size(((Ast.Expr.Binary) expr).getRight());
+        } else if (expr instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) expr;
+            return 1 + (access.getReceiver().isPresent() ? size(access.getReceiver().get()) : 0);
+        } else if (expr instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) expr;
+            int size = 1 + (function.getReceiver().isPresent() ? size(function.getReceiver().get()) : 0);
+            for (Ast.Expr argument : function.getArguments()) {
+                size += size(argument);
+            }
+            return size;
+        }
+        return 1;
+    }
+
+}
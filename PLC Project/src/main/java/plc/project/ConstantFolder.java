@@ -0,0 +1,267 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces binary expressions whose operands are literals with the literal
+ * they evaluate to, and variables declared with a literal value and never
+ * assigned with that literal, so that the {@link Interpreter} and {@link
+ * Generator} do not evaluate them again.
+ *
+ * Folding follows the semantics of the language: integers are {@link
+ * BigInteger}s and decimals {@link BigDecimal}s computed exactly, {@code AND}
+ * and {@code OR} short circuit, and {@code +} concatenates if either operand
+ * is a string. An expression is left alone if folding it could change what it
+ * does, which is when it would fail at runtime (such as dividing by zero), when
+ * an integer result is outside the 32-bit range the {@link Analyzer} allows
+ * for literals, and for the operations whose result depends on the rounding
+ * of decimals ({@code /}) or on how decimals are printed ({@code +} with a
+ * string). Since the {@link Generator} emits decimals as doubles, a folded
+ * decimal sum or product is the exact result rather than the double one.
+ *
+ * A variable is only propagated if no assignment anywhere in the source
+ * assigns a variable of the same name, so that shadowing can not hide an
+ * assignment to it.
+ */
+public final class ConstantFolder extends AstRewriter {
+
+    private static final BigInteger MIN_INTEGER = BigInteger.valueOf(Integer.MIN_VALUE);
+    private static final BigInteger MAX_INTEGER = BigInteger.valueOf(Integer.MAX_VALUE);
+
+    private final Set<String> assigned = new HashSet<>();
+
+    /**
+     * The literal value of each variable declared in each open block, or null
+     * for a variable which is not constant.
+     */
+    private final Deque<Map<String, Ast.Expr.Literal>> scopes = new ArrayDeque<>();
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        assigned.clear();
+        assigned.addAll(getAssignedNames(ast));
+        scopes.clear();
+        scopes.push(new HashMap<>());
+        try {
+            return super.visit(ast);
+        } finally {
+            scopes.clear();
+        }
+    }
+
+    @Override
+    public Ast.Field visit(Ast.Field ast) {
+        Ast.Field field = super.visit(ast);
+        declare(field.getName(), field.getValue().orElse(null));
+        return field;
+    }
+
+    @Override
+    public Ast.Method visit(Ast.Method ast) {
+        scopes.push(new HashMap<>());
+        try {
+            for (String parameter : ast.getParameters()) {
+                declare(parameter, null);
+            }
+            return super.visit(ast);
+        } finally {
+            scopes.pop();
+        }
+    }
+
+    @Override
+    public List<Ast.Stmt> rewriteBlock(List<Ast.Stmt> statements) {
+        scopes.push(new HashMap<>());
+        try {
+            return super.rewriteBlock(statements);
+        } finally {
+            scopes.pop();
+        }
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Declaration ast) {
+        Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) super.visit(ast);
+        declare(declaration.getName(), declaration.getValue().orElse(null));
+        return declaration;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.For ast) {
+        Ast.Expr value = rewrite(ast.getValue());
+        scopes.push(new HashMap<>());
+        List<Ast.Stmt> statements;
+        try {
+            declare(ast.getName(), null);
+            statements = rewriteBlock(ast.getStatements());
+        } finally {
+            scopes.pop();
+        }
+        if (value == ast.getValue() && statements == ast.getStatements()) {
+            return ast;
+        }
+        return new Ast.Stmt.For(ast.getName(), value, statements);
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Access ast) {
+        if (!ast.getReceiver().isPresent()) {
+            for (Map<String, Ast.Expr.Literal> scope : scopes) {
+                if (scope.containsKey(ast.getName())) {
+                    Ast.Expr.Literal literal = scope.get(ast.getName());
+                    return literal != null ? literal : ast;
+                }
+            }
+        }
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Group ast) {
+        Ast.Expr expression = rewrite(ast.getExpression());
+        if (expression instanceof Ast.Expr.Literal) {
+            return expression;
+        }
+        return expression == ast.getExpression() ? ast : annotate(new Ast.Expr.Group(expression), ast);
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Binary ast) {
+        Ast.Expr left = rewrite(ast.getLeft());
+        String operator = ast.getOperator();
+        if (left instanceof Ast.Expr.Literal) {
+            Object value = ((Ast.Expr.Literal) left).getLiteral();
+            if (operator.equals("AND") && Boolean.FALSE.equals(value) || operator.equals("OR") && Boolean.TRUE.equals(value)) {
+                return left;
+            }
+        }
+        Ast.Expr right = rewrite(ast.getRight());
+        if (left instanceof Ast.Expr.Literal && right instanceof Ast.Expr.Literal) {
+            Object value = fold(operator, ((Ast.Expr.Literal) left).getLiteral(), ((Ast.Expr.Literal) right).getLiteral());
+            if (value != null) {
+                return annotate(new Ast.Expr.Literal(value), ast);
+            }
+        }
+        if (left == ast.getLeft() && right == ast.getRight()) {
+            return ast;
+        }
+        return annotate(new Ast.Expr.Binary(operator, left, right), ast);
+    }
+
+    /**
+     * Returns the value of the binary expression over two literal values, or
+     * null if it is not folded.
+     */
+    static Object fold(String operator, Object left, Object right) {
+        switch (operator) {
+            case "AND":
+            case "OR":
+                if (left instanceof Boolean && right instanceof Boolean) {
+                    return operator.equals("AND") ? (Boolean) left && (Boolean) right : (Boolean) left || (Boolean) right;
+                }
+                return null;
+            case "==":
+            case "!=":
+                if (left == null || right == null || left.getClass() != right.getClass() || left instanceof BigDecimal) {
+                    return null;
+                }
+                return left.equals(right) == operator.equals("==");
+            case "<":
+            case "<=":
+            case ">":
+            case ">=":
+                if (left == null || right == null || left.getClass() != right.getClass() || !(left instanceof Comparable)) {
+                    return null;
+                }
+                @SuppressWarnings("unchecked")
+                int comparison = ((Comparable<Object>) left).compareTo(right);
+                return operator.equals("<") ? comparison < 0 : operator.equals("<=") ? comparison <= 0
+                        : operator.equals(">") ? comparison > 0 : comparison >= 0;
+            case "+":
+                if (left instanceof String || right instanceof String) {
+                    return isPrintable(left) && isPrintable(right) ? left.toString() + right.toString() : null;
+                }
+                return arithmetic(operator, left, right);
+            case "-":
+            case "*":
+            case "/":
+                return arithmetic(operator, left, right);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Folds {@code +}, {@code -}, {@code *} or {@code /} of two integers or
+     * two decimals, or returns null (decimal division is not folded).
+     */
+    private static Object arithmetic(String operator, Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return integer(operator, (BigInteger) left, (BigInteger) right);
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal && !operator.equals("/")) {
+            BigDecimal l = (BigDecimal) left;
+            BigDecimal r = (BigDecimal) right;
+            return operator.equals("+") ? l.add(r) : operator.equals("-") ? l.subtract(r) : l.multiply(r);
+        }
+        return null;
+    }
+
+    private static BigInteger integer(String operator, BigInteger left, BigInteger right) {
+        BigInteger result;
+        if (operator.equals("+")) {
+            result = left.add(right);
+        } else if (operator.equals("-")) {
+            result = left.subtract(right);
+        } else if (operator.equals("*")) {
+            result = left.multiply(right);
+        } else if (right.signum() != 0) {
+            result = left.divide(right);
+        } else {
+            return null;
+        }
+        return result.compareTo(MIN_INTEGER) >= 0 && result.compareTo(MAX_INTEGER) <= 0 ? result : null;
+    }
+
+    /**
+     * Returns true if the value is printed the same when concatenated by the
+     * {@link Interpreter} and by the Java the {@link Generator} emits.
+     */
+    private static boolean isPrintable(Object value) {
+        return value instanceof String || value instanceof Character || value instanceof BigInteger || value instanceof Boolean;
+    }
+
+    private void declare(String name, Ast.Expr value) {
+        if (scopes.isEmpty()) {
+            return;
+        }
+        boolean constant = value instanceof Ast.Expr.Literal && !assigned.contains(name);
+        scopes.peek().put(name, constant ? (Ast.Expr.Literal) value : null);
+    }
+
+    /**
+     * Returns the names of the variables assigned anywhere in the tree, not
+     * counting fields of objects.
+     */
+    static Set<String> getAssignedNames(Ast ast) {
+        Set<String> names = new HashSet<>();
+        new AstRewriter() {
+            @Override
+            public Ast.Stmt visit(Ast.Stmt.Assignment ast) {
+                if (ast.getReceiver() instanceof Ast.Expr.Access && !((Ast.Expr.Access) ast.getReceiver()).getReceiver().isPresent()) {
+                    names.add(((Ast.Expr.Access) ast.getReceiver()).getName());
+                }
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        return names;
+    }
+
+}
@@ -0,0 +1,225 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Removes statements which can never run: the statements of a block after one
+ * which always returns, the branch of an {@code IF} whose condition is a
+ * literal and is never taken, and {@code WHILE} loops whose condition is the
+ * literal {@code FALSE}. Conditions only become literals after {@link
+ * ConstantFolder}, which the {@link Optimizer} runs first.
+ *
+ * The taken branch of an {@code IF} replaces the statement in the enclosing
+ * block. A variable the branch declares would then be visible to the rest of
+ * the block, so if its name is used anywhere else in the block it is renamed
+ * to a fresh name (a variable {@code x} becomes {@code x_0}, {@code x_1},
+ * ...) in the branch.
+ *
+ * Each removal is recorded and returned by {@link #getRemovals()}.
+ */
+public final class DeadCodeEliminator extends AstRewriter {
+
+    public enum Reason {
+
+        /**
+         * The statement follows one which always returns.
+         */
+        UNREACHABLE,
+
+        /**
+         * The {@code IF} statement's condition is a literal, so only one of its
+         * branches remains.
+         */
+        CONSTANT_CONDITION,
+
+        /**
+         * The {@code WHILE} loop's condition is {@code FALSE}.
+         */
+        NEVER_ENTERED
+
+    }
+
+    public static final class Removal {
+
+        private final String method;
+        private final Reason reason;
+        private final Ast.Stmt statement;
+
+        public Removal(String method, Reason reason, Ast.Stmt statement) {
+            this.method = method;
+            this.reason = reason;
+            this.statement = statement;
+        }
+
+        /**
+         * Returns the name of the method the statement was removed from.
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        public Ast.Stmt getStatement() {
+            return statement;
+        }
+
+        @Override
+        public String toString() {
+            return "Removal{" +
+                    "method='" + method + '\'' +
+                    ", reason=" + reason +
+                    ", statement=" + statement +
+                    '}';
+        }
+
+    }
+
+    private final List<Removal> removals = new ArrayList<>();
+    private String method = null;
+    private Set<String> names = new HashSet<>();
+
+    /**
+     * The statements of the block being rewritten, which a spliced branch
+     * must not clash with.
+     */
+    private List<Ast.Stmt> enclosing = Collections.emptyList();
+
+    /**
+     * Returns everything removed so far, in the order it was removed.
+     */
+    public List<Removal> getRemovals() {
+        return Collections.unmodifiableList(removals);
+    }
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        names = getNames(ast);
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast.Method visit(Ast.Method ast) {
+        method = ast.getName();
+        try {
+            return super.visit(ast);
+        } finally {
+            method = null;
+        }
+    }
+
+    @Override
+    public List<Ast.Stmt> rewriteBlock(List<Ast.Stmt> statements) {
+        List<Ast.Stmt> block = new ArrayList<>(statements.size());
+        List<Ast.Stmt> outer = enclosing;
+        try {
+            for (int i = 0; i < statements.size(); i++) {
+                if (!block.isEmpty() && returns(block.get(block.size() - 1))) {
+                    for (Ast.Stmt statement : statements.subList(i, statements.size())) {
+                        removals.add(new Removal(method, Reason.UNREACHABLE, statement));
+                    }
+                    break;
+                }
+                enclosing = statements;
+                rewriteStatement(statements.get(i), block);
+            }
+        } finally {
+            enclosing = outer;
+        }
+        return same(block, statements) ? statements : block;
+    }
+
+    @Override
+    protected void rewriteStatement(Ast.Stmt statement, List<Ast.Stmt> block) {
+        if (statement instanceof Ast.Stmt.If && isConstant(((Ast.Stmt.If) statement).getCondition())) {
+            Ast.Stmt.If stmt = (Ast.Stmt.If) statement;
+            boolean condition = (Boolean) ((Ast.Expr.Literal) stmt.getCondition()).getLiteral();
+            List<Ast.Stmt> others = enclosing;
+            List<Ast.Stmt> taken = rewriteBlock(condition ? stmt.getThenStatements() : stmt.getElseStatements());
+            removals.add(new Removal(method, Reason.CONSTANT_CONDITION, statement));
+            block.addAll(splice(taken, statement, others));
+        } else if (statement instanceof Ast.Stmt.While && isFalse(((Ast.Stmt.While) statement).getCondition())) {
+            removals.add(new Removal(method, Reason.NEVER_ENTERED, statement));
+        } else {
+            super.rewriteStatement(statement, block);
+        }
+    }
+
+    /**
+     * Returns true if the statement always returns, being a {@code RETURN} or
+     * an {@code IF} whose branches both return (or whose taken branch returns,
+     * if the condition is a literal).
+     */
+    static boolean returns(Ast.Stmt statement) {
+        if (statement instanceof Ast.Stmt.Return) {
+            return true;
+        } else if (statement instanceof Ast.Stmt.If) {
+            Ast.Stmt.If stmt = (Ast.Stmt.If) statement;
+            if (isConstant(stmt.getCondition())) {
+                return isFalse(stmt.getCondition()) ? returns(stmt.getElseStatements()) : returns(stmt.getThenStatements());
+            }
+            return returns(stmt.getThenStatements()) && returns(stmt.getElseStatements());
+        }
+        return false;
+    }
+
+    private static boolean returns(List<Ast.Stmt> statements) {
+        for (Ast.Stmt statement : statements) {
+            if (returns(statement)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the statements of a taken branch to put in place of the {@code
+     * IF} statement, renaming the variables it declares whose names are used
+     * by the other statements of the enclosing block from their declarations
+     * on (the value of {@code LET x = x + 1;} still reads the outer {@code x}).
+     */
+    private List<Ast.Stmt> splice(List<Ast.Stmt> taken, Ast.Stmt statement, List<Ast.Stmt> enclosing) {
+        Set<String> used = new HashSet<>();
+        for (Ast.Stmt other : enclosing) {
+            if (other != statement) {
+                used.addAll(getNames(other));
+            }
+        }
+        Map<String, String> renames = new HashMap<>();
+        Renamer renamer = new Renamer(renames, new HashMap<>());
+        List<Ast.Stmt> spliced = new ArrayList<>(taken.size());
+        for (Ast.Stmt stmt : taken) {
+            if (stmt instanceof Ast.Stmt.Declaration && used.contains(((Ast.Stmt.Declaration) stmt).getName())) {
+                Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) stmt;
+                Optional<Ast.Expr> value = renamer.rewrite(declaration.getValue());
+                names.addAll(used);
+                String name = fresh(declaration.getName() + "_", names);
+                renames.put(declaration.getName(), name);
+                Ast.Stmt.Declaration renamed = new Ast.Stmt.Declaration(name, declaration.getTypeName(), value);
+                renamed.setVariable(renamer.rename(annotation(declaration::getVariable)));
+                spliced.add(renamed);
+            } else {
+                spliced.add(renamer.rewrite(stmt));
+            }
+        }
+        return renames.isEmpty() ? taken : spliced;
+    }
+
+    private static boolean isConstant(Ast.Expr expr) {
+        return expr instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) expr).getLiteral() instanceof Boolean;
+    }
+
+    private static boolean isFalse(Ast.Expr expr) {
+        return isConstant(expr) && !(Boolean) ((Ast.Expr.Literal) expr).getLiteral();
+    }
+
+}
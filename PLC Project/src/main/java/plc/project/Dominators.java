@@ -0,0 +1,135 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dominator tree of an {@link Ir.Function}, where a block dominates
+ * another if every path from the entry to the other goes through it, and the
+ * immediate dominator of a block is its closest strict dominator.
+ *
+ * Immediate dominators are found with the iterative algorithm of Cooper,
+ * Harvey and Kennedy ("A Simple, Fast Dominance Algorithm"), which intersects
+ * the dominators of the predecessors of each block in reverse postorder until
+ * nothing changes. The dominance frontier of a block, the blocks where its
+ * dominance ends, is where {@link SsaBuilder} places phis.
+ *
+ * The dominators describe the blocks reachable from the entry when they were
+ * computed, with predecessors updated, and must be recomputed after the
+ * control flow graph changes.
+ */
+public final class Dominators {
+
+    private final List<Ir.Block> order;
+    private final Map<Ir.Block, Integer> indices = new HashMap<>();
+    private final Map<Ir.Block, Ir.Block> idoms = new HashMap<>();
+    private final Map<Ir.Block, List<Ir.Block>> children = new HashMap<>();
+    private final Map<Ir.Block, Set<Ir.Block>> frontiers = new HashMap<>();
+
+    public static Dominators of(Ir.Function function) {
+        return new Dominators(function);
+    }
+
+    private Dominators(Ir.Function function) {
+        order = function.getReversePostorder();
+        for (int i = 0; i < order.size(); i++) {
+            indices.put(order.get(i), i);
+            children.put(order.get(i), new ArrayList<>());
+            frontiers.put(order.get(i), new LinkedHashSet<>());
+        }
+        Ir.Block entry = order.get(0);
+        idoms.put(entry, entry);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Ir.Block block : order.subList(1, order.size())) {
+                Ir.Block idom = null;
+                for (Ir.Block predecessor : block.getPredecessors()) {
+                    if (idoms.containsKey(predecessor)) {
+                        idom = idom == null ? predecessor : intersect(predecessor, idom);
+                    }
+                }
+                if (idoms.get(block) != idom) {
+                    idoms.put(block, idom);
+                    changed = true;
+                }
+            }
+        }
+        idoms.put(entry, null);
+        for (Ir.Block block : order.subList(1, order.size())) {
+            children.get(idoms.get(block)).add(block);
+        }
+        for (Ir.Block block : order) {
+            if (block.getPredecessors().size() > 1) {
+                for (Ir.Block predecessor : block.getPredecessors()) {
+                    for (Ir.Block runner = predecessor; runner != null && runner != idoms.get(block); runner = idoms.get(runner)) {
+                        if (indices.containsKey(runner)) {
+                            frontiers.get(runner).add(block);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the closest common dominator of two blocks, walking up from
+     * whichever is later in reverse postorder.
+     */
+    private Ir.Block intersect(Ir.Block first, Ir.Block second) {
+        while (first != second) {
+            while (indices.get(first) > indices.get(second)) {
+                first = idoms.get(first);
+            }
+            while (indices.get(second) > indices.get(first)) {
+                second = idoms.get(second);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Returns the blocks in reverse postorder, starting with the entry.
+     */
+    public List<Ir.Block> getBlocks() {
+        return Collections.unmodifiableList(order);
+    }
+
+    /**
+     * Returns the immediate dominator of the block, or null for the entry.
+     */
+    public Ir.Block getImmediateDominator(Ir.Block block) {
+        return idoms.get(block);
+    }
+
+    /**
+     * Returns the blocks the block immediately dominates, its children in the
+     * dominator tree.
+     */
+    public List<Ir.Block> getChildren(Ir.Block block) {
+        return Collections.unmodifiableList(children.get(block));
+    }
+
+    public Set<Ir.Block> getFrontier(Ir.Block block) {
+        return Collections.unmodifiableSet(frontiers.get(block));
+    }
+
+    /**
+     * Returns true if the first block dominates the second, which includes
+     * when they are the same block.
+     */
+    public boolean dominates(Ir.Block dominator, Ir.Block block) {
+        for (Ir.Block runner = block; runner != null; runner = idoms.get(runner)) {
+            if (runner == dominator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
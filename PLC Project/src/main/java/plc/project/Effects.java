@@ -0,0 +1,236 @@
+package plc.project;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds which calls and expressions of a source have no effects and only
+ * depend on the values of local variables, so that optimization passes can
+ * evaluate them fewer times or earlier without changing what the program does.
+ *
+ * A method of the source is pure if it only reads and assigns its parameters
+ * and the variables it declares, never accesses a field or calls a method of
+ * an object, and only calls pure methods. Since a pure method reads no fields,
+ * a call with the same arguments always returns the same value, whatever
+ * other calls do in between. Methods which are not defined in the source (such
+ * as {@code print}) and methods of objects are never pure. Purity is found as
+ * a fixed point, so recursive methods can be pure.
+ *
+ * An expression (rather than a method) may also read fields of objects held
+ * by local variables, such as {@code list.length}, and still be pure. Its
+ * value can then change when a field of an object is assigned or an impure
+ * call is made, which {@link #readsFields(Ast.Expr)} tells passes to allow
+ * for.
+ *
+ * Names are compared without regard to scope: a local variable with the name
+ * of a field is treated as the field.
+ */
+public final class Effects {
+
+    private final Set<String> fields = new HashSet<>();
+
+    /**
+     * The pure methods, as {@code name/arity}.
+     */
+    private final Set<String> pure = new HashSet<>();
+
+    private Effects() {}
+
+    public static Effects of(Ast.Source source) {
+        Effects effects = new Effects();
+        for (Ast.Field field : source.getFields()) {
+            effects.fields.add(field.getName());
+        }
+        Map<String, Ast.Method> methods = new HashMap<>();
+        for (Ast.Method method : source.getMethods()) {
+            methods.put(key(method.getName(), method.getParameters().size()), method);
+        }
+        effects.pure.addAll(methods.keySet());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Ast.Method> entry : methods.entrySet()) {
+                if (effects.pure.contains(entry.getKey()) && !effects.isPure(entry.getValue())) {
+                    effects.pure.remove(entry.getKey());
+                    changed = true;
+                }
+            }
+        }
+        return effects;
+    }
+
+    /**
+     * Returns true if the method of the source is pure.
+     */
+    public boolean isPure(String name, int arity) {
+        return pure.contains(key(name, arity));
+    }
+
+    /**
+     * Returns true if evaluating the expression has no effects and it only
+     * reads the given variables, which must not include fields, and fields of
+     * objects those variables hold.
+     */
+    public boolean isPure(Ast.Expr expr, Set<String> variables) {
+        return isPure(expr, variables, true);
+    }
+
+    private boolean isPure(Ast.Expr expr, Set<String> variables, boolean objectFields) {
+        if (expr instanceof Ast.Expr.Literal) {
+            return true;
+        } else if (expr instanceof Ast.Expr.Group) {
+            return isPure(((Ast.Expr.Group) expr).getExpression(), variables, objectFields);
+        } else if (expr instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) expr;
+            return isPure(binary.getLeft(), variables, objectFields) && isPure(binary.getRight(), variables, objectFields);
+        } else if (expr instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) expr;
+            if (access.getReceiver().isPresent()) {
+                return objectFields && isPure(access.getReceiver().get(), variables, true);
+            }
+            return variables.contains(access.getName());
+        } else if (expr instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) expr;
+            if (function.getReceiver().isPresent() || !isPure(function.getName(), function.getArguments().size())) {
+                return false;
+            }
+            for (Ast.Expr argument : function.getArguments()) {
+                if (!isPure(argument, variables, objectFields)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        throw new AssertionError(expr.getClass());
+    }
+
+    /**
+     * Returns true if the expression reads a field of an object.
+     */
+    static boolean readsFields(Ast.Expr expr) {
+        if (expr instanceof Ast.Expr.Group) {
+            return readsFields(((Ast.Expr.Group) expr).getExpression());
+        } else if (expr instanceof Ast.Expr.Binary) {
+            return readsFields(((Ast.Expr.Binary) expr).getLeft()) || readsFields(((Ast.Expr.Binary) expr).getRight());
+        } else if (expr instanceof Ast.Expr.Access) {
+            return ((Ast.Expr.Access) expr).getReceiver().isPresent();
+        } else if (expr instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) expr;
+            if (function.getReceiver().isPresent() && readsFields(function.getReceiver().get())) {
+                return true;
+            }
+            for (Ast.Expr argument : function.getArguments()) {
+                if (readsFields(argument)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the local variables of the method, which are its parameters
+     * and every variable it declares that is not named like a field.
+     */
+    public Set<String> getLocals(Ast.Method method) {
+        Set<String> locals = new HashSet<>(method.getParameters());
+        addDeclarations(method.getStatements(), locals);
+        locals.removeAll(fields);
+        return locals;
+    }
+
+    private boolean isPure(Ast.Method method) {
+        Set<String> locals = getLocals(method);
+        return isPure(method.getStatements(), locals);
+    }
+
+    private boolean isPure(List<Ast.Stmt> statements, Set<String> locals) {
+        for (Ast.Stmt statement : statements) {
+            if (!isPure(statement, locals)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isPure(Ast.Stmt statement, Set<String> locals) {
+        if (statement instanceof Ast.Stmt.Expression) {
+            return isPure(((Ast.Stmt.Expression) statement).getExpression(), locals, false);
+        } else if (statement instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) statement;
+            return !declaration.getValue().isPresent() || isPure(declaration.getValue().get(), locals, false);
+        } else if (statement instanceof Ast.Stmt.Assignment) {
+            Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) statement;
+            return isPure(assignment.getReceiver(), locals, false) && isPure(assignment.getValue(), locals, false);
+        } else if (statement instanceof Ast.Stmt.If) {
+            Ast.Stmt.If stmt = (Ast.Stmt.If) statement;
+            return isPure(stmt.getCondition(), locals, false) && isPure(stmt.getThenStatements(), locals)
+                    && isPure(stmt.getElseStatements(), locals);
+        } else if (statement instanceof Ast.Stmt.For) {
+            Ast.Stmt.For stmt = (Ast.Stmt.For) statement;
+            return isPure(stmt.getValue(), locals, false) && isPure(stmt.getStatements(), locals);
+        } else if (statement instanceof Ast.Stmt.While) {
+            Ast.Stmt.While stmt = (Ast.Stmt.While) statement;
+            return isPure(stmt.getCondition(), locals, false) && isPure(stmt.getStatements(), locals);
+        } else if (statement instanceof Ast.Stmt.Return) {
+            return isPure(((Ast.Stmt.Return) statement).getValue(), locals, false);
+        }
+        throw new AssertionError(statement.getClass());
+    }
+
+    /**
+     * Adds the names of the variables declared in the statements, including
+     * those of nested blocks and {@code FOR} loops, to {@code names}.
+     */
+    static void addDeclarations(List<Ast.Stmt> statements, Set<String> names) {
+        for (Ast.Stmt statement : statements) {
+            if (statement instanceof Ast.Stmt.Declaration) {
+                names.add(((Ast.Stmt.Declaration) statement).getName());
+            } else if (statement instanceof Ast.Stmt.If) {
+                addDeclarations(((Ast.Stmt.If) statement).getThenStatements(), names);
+                addDeclarations(((Ast.Stmt.If) statement).getElseStatements(), names);
+            } else if (statement instanceof Ast.Stmt.For) {
+                names.add(((Ast.Stmt.For) statement).getName());
+                addDeclarations(((Ast.Stmt.For) statement).getStatements(), names);
+            } else if (statement instanceof Ast.Stmt.While) {
+                addDeclarations(((Ast.Stmt.While) statement).getStatements(), names);
+            }
+        }
+    }
+
+    /**
+     * Adds the names of the variables the expression reads, not counting
+     * fields of objects, to {@code names}.
+     */
+    static void addReads(Ast.Expr expr, Set<String> names) {
+        if (expr instanceof Ast.Expr.Group) {
+            addReads(((Ast.Expr.Group) expr).getExpression(), names);
+        } else if (expr instanceof Ast.Expr.Binary) {
+            addReads(((Ast.Expr.Binary) expr).getLeft(), names);
+            addReads(((Ast.Expr.Binary) expr).getRight(), names);
+        } else if (expr instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) expr;
+            if (access.getReceiver().isPresent()) {
+                addReads(access.getReceiver().get(), names);
+            } else {
+                names.add(access.getName());
+            }
+        } else if (expr instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) expr;
+            if (function.getReceiver().isPresent()) {
+                addReads(function.getReceiver().get(), names);
+            }
+            for (Ast.Expr argument : function.getArguments()) {
+                addReads(argument, names);
+            }
+        }
+    }
+
+    private static String key(String name, int arity) {
+        return name + "/" + arity;
+    }
+
+}
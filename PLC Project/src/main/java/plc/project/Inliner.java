@@ -0,0 +1,353 @@
+package plc.project;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Replaces calls of small methods of the source with the method's statements,
+ * saving the cost of the call (a new scope and the arguments' variables in the
+ * {@link Interpreter}) and letting other passes see through it.
+ *
+ * A method is inlined if it is not recursive (directly or through other
+ * methods), the number of nodes in its statements is within the budget, and
+ * its only {@code RETURN} is its last statement. A method which is just a
+ * {@code RETURN} of an expression is inlined wherever it is called with
+ * literals or variables as arguments, by replacing the call with the
+ * expression and the parameters with the arguments. Any other method is
+ * inlined where the call is a whole statement, the value of a declaration,
+ * the value assigned to a variable or the value returned: each argument is
+ * declared as a variable in order, then come the method's statements, then the
+ * statement with the returned expression in place of the call.
+ *
+ * The method's parameters and variables are renamed to fresh names (a variable
+ * {@code x} becomes {@code x_0}, {@code x_1}, ...) so that they can not clash
+ * with the caller's. A method which reads or assigns a field is not inlined
+ * into a caller declaring a variable of the same name, which would capture it.
+ */
+public final class Inliner extends AstRewriter {
+
+    public static final int DEFAULT_BUDGET = 32;
+
+    private final int budget;
+
+    /**
+     * The methods to inline, by {@code name/arity}.
+     */
+    private final Map<String, Ast.Method> inlinable = new HashMap<>();
+
+    /**
+     * The fields each inlinable method reads or assigns, by identity since
+     * methods are compared structurally and lazy methods parse on equals.
+     */
+    private final Map<Ast.Method, Set<String>> fields = new IdentityHashMap<>();
+
+    private Set<String> names = new HashSet<>();
+
+    /**
+     * The parameters and variables of the method being rewritten, or null
+     * outside of methods, where nothing is inlined.
+     */
+    private Set<String> declared = null;
+
+    public Inliner() {
+        this(DEFAULT_BUDGET);
+    }
+
+    public Inliner(int budget) {
+        this.budget = budget;
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        inlinable.clear();
+        fields.clear();
+        names = getNames(ast);
+        Map<String, Ast.Method> methods = new HashMap<>();
+        for (Ast.Method method : ast.getMethods()) {
+            methods.put(key(method.getName(), method.getParameters().size()), method);
+        }
+        for (Map.Entry<String, Ast.Method> entry : methods.entrySet()) {
+            Ast.Method method = entry.getValue();
+            if (size(method.getStatements()) <= budget && returnsLast(method.getStatements())
+                    && !calls(method, entry.getKey(), methods, new HashSet<>())) {
+                inlinable.put(entry.getKey(), method);
+                fields.put(method, getFields(method));
+            }
+        }
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast.Method visit(Ast.Method ast) {
+        declared = getDeclarations(ast);
+        try {
+            return super.visit(ast);
+        } finally {
+            declared = null;
+        }
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Function ast) {
+        Ast.Expr expr = super.visit(ast);
+        Ast.Method method = getInlinable(expr);
+        if (method == null || !isExpression(method)) {
+            return expr;
+        }
+        Ast.Expr.Function function = (Ast.Expr.Function) expr;
+        for (Ast.Expr argument : function.getArguments()) {
+            if (!isTrivial(argument)) {
+                return expr;
+            }
+        }
+        Map<String, Ast.Expr> arguments = new HashMap<>();
+        for (int i = 0; i < method.getParameters().size(); i++) {
+            arguments.put(method.getParameters().get(i), function.getArguments().get(i));
+        }
+        Ast.Expr value = new Renamer(new HashMap<>(), arguments).rewrite(((Ast.Stmt.Return) method.getStatements().get(0)).getValue());
+        if (value instanceof Ast.Expr.Binary) {
+            Ast.Expr.Group group = new Ast.Expr.Group(value);
+            setType(group, annotation(value::getType));
+            return group;
+        }
+        return value;
+    }
+
+    @Override
+    protected void rewriteStatement(Ast.Stmt statement, List<Ast.Stmt> block) {
+        Ast.Stmt stmt = rewrite(statement);
+        Ast.Expr call = getCall(stmt);
+        Ast.Method method = getInlinable(call);
+        if (method == null) {
+            block.add(stmt);
+            return;
+        }
+        List<Ast.Stmt> statements = method.getStatements();
+        Ast.Stmt last = statements.isEmpty() ? null : statements.get(statements.size() - 1);
+        boolean returns = last instanceof Ast.Stmt.Return;
+        Ast.Expr returned = returns ? ((Ast.Stmt.Return) last).getValue() : null;
+        if (stmt instanceof Ast.Stmt.Expression ? returns && !isDiscardable(returned) : !returns) {
+            block.add(stmt);
+            return;
+        }
+        Ast.Expr.Function function = (Ast.Expr.Function) call;
+        Map<String, String> renames = new HashMap<>();
+        Set<String> locals = new HashSet<>(method.getParameters());
+        Effects.addDeclarations(statements, locals);
+        for (String local : locals) {
+            renames.put(local, fresh(local + "_", names));
+        }
+        Environment.Function callee = annotation(function::getFunction);
+        Map<String, Environment.Variable> parameters = new HashMap<>();
+        for (int i = 0; i < method.getParameters().size(); i++) {
+            String name = renames.get(method.getParameters().get(i));
+            Ast.Expr argument = function.getArguments().get(i);
+            Environment.Type type = callee != null ? callee.getParameterTypes().get(i) : null;
+            Environment.Variable variable = type != null ? new Environment.Variable(name, name, type, Environment.NIL) : null;
+            Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(name, Optional.of(argument));
+            declaration.setVariable(variable);
+            parameters.put(method.getParameters().get(i), variable);
+            block.add(declaration);
+        }
+        Renamer renamer = new Renamer(renames, new HashMap<>());
+        renamer.parameters.putAll(parameters);
+        block.addAll(renamer.rewriteBlock(returns ? statements.subList(0, statements.size() - 1) : statements));
+        if (!returns) {
+            return;
+        }
+        Ast.Expr value = renamer.rewrite(returned);
+        if (stmt instanceof Ast.Stmt.Expression) {
+            if (value instanceof Ast.Expr.Function) {
+                block.add(new Ast.Stmt.Expression(value));
+            }
+        } else if (stmt instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) stmt;
+            block.add(annotate(new Ast.Stmt.Declaration(declaration.getName(), declaration.getTypeName(), Optional.of(value)), declaration));
+        } else if (stmt instanceof Ast.Stmt.Assignment) {
+            block.add(new Ast.Stmt.Assignment(((Ast.Stmt.Assignment) stmt).getReceiver(), value));
+        } else {
+            block.add(new Ast.Stmt.Return(value));
+        }
+    }
+
+    /**
+     * Returns the method the expression calls if it is inlined into the
+     * current method, or null.
+     */
+    private Ast.Method getInlinable(Ast.Expr expr) {
+        if (declared == null || !(expr instanceof Ast.Expr.Function) || ((Ast.Expr.Function) expr).getReceiver().isPresent()) {
+            return null;
+        }
+        Ast.Expr.Function function = (Ast.Expr.Function) expr;
+        Ast.Method method = inlinable.get(key(function.getName(), function.getArguments().size()));
+        if (method == null || !Collections.disjoint(fields.get(method), declared)) {
+            return null;
+        }
+        return method;
+    }
+
+    /**
+     * Returns the call a statement is made of, which is inlined by replacing
+     * the statement, or null.
+     */
+    private static Ast.Expr getCall(Ast.Stmt statement) {
+        if (statement instanceof Ast.Stmt.Expression) {
+            return ((Ast.Stmt.Expression) statement).getExpression();
+        } else if (statement instanceof Ast.Stmt.Declaration) {
+            return ((Ast.Stmt.Declaration) statement).getValue().orElse(null);
+        } else if (statement instanceof Ast.Stmt.Assignment) {
+            Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) statement;
+            boolean variable = assignment.getReceiver() instanceof Ast.Expr.Access
+                    && !((Ast.Expr.Access) assignment.getReceiver()).getReceiver().isPresent();
+            return variable ? assignment.getValue() : null;
+        } else if (statement instanceof Ast.Stmt.Return) {
+            return ((Ast.Stmt.Return) statement).getValue();
+        }
+        return null;
+    }
+
+    private static boolean isExpression(Ast.Method method) {
+        return method.getStatements().size() == 1 && method.getStatements().get(0) instanceof Ast.Stmt.Return;
+    }
+
+    private static boolean isTrivial(Ast.Expr expr) {
+        return expr instanceof Ast.Expr.Literal
+                || expr instanceof Ast.Expr.Access && !((Ast.Expr.Access) expr).getReceiver().isPresent();
+    }
+
+    /**
+     * Returns true if the value returned by a method called as a statement
+     * can be left out or kept as a statement of its own.
+     */
+    private static boolean isDiscardable(Ast.Expr expr) {
+        return isTrivial(expr) || expr instanceof Ast.Expr.Function;
+    }
+
+    /**
+     * Returns true if the only {@code RETURN} of the statements, if any, is
+     * the last one.
+     */
+    private static boolean returnsLast(List<Ast.Stmt> statements) {
+        for (int i = 0; i < statements.size(); i++) {
+            Ast.Stmt statement = statements.get(i);
+            if (statement instanceof Ast.Stmt.Return ? i != statements.size() - 1 : returns(statement)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the statement contains a {@code RETURN} in a nested
+     * block.
+     */
+    private static boolean returns(Ast.Stmt statement) {
+        boolean[] returns = {false};
+        new AstRewriter() {
+            @Override
+            public Ast.Stmt visit(Ast.Stmt.Return ast) {
+                returns[0] = true;
+                return ast;
+            }
+        }.visit(statement);
+        return returns[0];
+    }
+
+    /**
+     * Returns true if the method calls the method with the given key, directly
+     * or through other methods of the source.
+     */
+    private static boolean calls(Ast.Method method, String target, Map<String, Ast.Method> methods, Set<String> visited) {
+        for (String callee : getCallees(method)) {
+            if (callee.equals(target)) {
+                return true;
+            } else if (methods.containsKey(callee) && visited.add(callee)
+                    && calls(methods.get(callee), target, methods, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> getCallees(Ast.Method method) {
+        Set<String> callees = new HashSet<>();
+        new AstRewriter() {
+            @Override
+            public Ast.Expr visit(Ast.Expr.Function ast) {
+                if (!ast.getReceiver().isPresent()) {
+                    callees.add(key(ast.getName(), ast.getArguments().size()));
+                }
+                return super.visit(ast);
+            }
+        }.visit(method);
+        return callees;
+    }
+
+    /**
+     * Returns the names of the variables the method reads or assigns which
+     * are not its own, and so are fields.
+     */
+    private static Set<String> getFields(Ast.Method method) {
+        Set<String> names = new HashSet<>();
+        new AstRewriter() {
+            @Override
+            protected Ast.Expr rewriteReceiver(Ast.Expr receiver) {
+                visit(receiver);
+                return receiver;
+            }
+
+            @Override
+            public Ast.Expr visit(Ast.Expr.Access ast) {
+                if (!ast.getReceiver().isPresent()) {
+                    names.add(ast.getName());
+                }
+                return super.visit(ast);
+            }
+        }.visit(method);
+        names.removeAll(getDeclarations(method));
+        return names;
+    }
+
+    private static Set<String> getDeclarations(Ast.Method method) {
+        Set<String> names = new HashSet<>(method.getParameters());
+        Effects.addDeclarations(method.getStatements(), names);
+        return names;
+    }
+
+    /**
+     * Returns the number of nodes of the statements and their expressions.
+     */
+    static int size(List<Ast.Stmt> statements) {
+        int[] size = {0};
+        AstRewriter counter = new AstRewriter() {
+            @Override
+            protected void rewriteStatement(Ast.Stmt statement, List<Ast.Stmt> block) {
+                size[0]++;
+                super.rewriteStatement(statement, block);
+            }
+
+            @Override
+            public Ast.Expr rewrite(Ast.Expr expr) {
+                size[0] += CommonSubexpressionEliminator.size(expr);
+                return expr;
+            }
+        };
+        counter.rewriteBlock(statements);
+        return size[0];
+    }
+
+    private static String key(String name, int arity) {
+        return name + "/" + arity;
+    }
+
+}
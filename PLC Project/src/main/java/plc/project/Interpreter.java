@@ -11,6 +11,18 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     private Scope scope = new Scope(null);
 
+    /**
+     * The methods of the source by the function defined for each, so that a
+     * tail call can find the statements of the method it calls.
+     */
+    private final Map<Environment.Function, Definition> definitions = new IdentityHashMap<>();
+
+    /**
+     * The number of methods of the source being run, outside of which a
+     * {@code RETURN} is not a tail call.
+     */
+    private int invoking = 0;
+
     public Interpreter(Scope parent) {
         scope = new Scope(parent);
         scope.defineFunction("print", 1, args -> {
@@ -54,32 +66,52 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Method ast) {
         //throw new UnsupportedOperationException(); //TODO
-        Scope currentScope = new Scope(scope);
-        scope.defineFunction(ast.getName(), ast.getParameters().size(), functions -> {
-            try {
-                scope = new Scope(currentScope);
-                int parameters = ast.getParameters().size();
-                for (int i = 0; i < parameters; i++) {
-                    scope.defineVariable(ast.getParameters().get(i), functions.get(i));
-                }
-
-                for (Ast.Stmt statement : ast.getStatements()) {
-                    visit(statement);
-                }
-
-            }
-            catch (Return returnException) {
-                return returnException.value;
-            }
-            finally {
-                scope = scope.getParent();
-            }
-            return Environment.NIL;
-        });
+        Definition definition = new Definition(ast, new Scope(scope));
+        scope.defineFunction(ast.getName(), ast.getParameters().size(), arguments -> invoke(definition, arguments));
+        definitions.put(scope.lookupFunction(ast.getName(), ast.getParameters().size()), definition);
+        return Environment.NIL;
+    }
 
+    /**
+     * Runs a method of the source. A tail call it makes (see {@link
+     * #visit(Ast.Stmt.Return)}) unwinds back here and the callee runs in
+     * place of the method, so chains of tail calls, including mutually
+     * recursive ones, run in constant Java stack. The caller's scope is
+     * restored afterwards, even if a {@code RETURN} left nested scopes open.
+     */
+    private Environment.PlcObject invoke(Definition definition, List<Environment.PlcObject> arguments) {
+        Scope caller = scope;
+        invoking++;
+        try {
+            while (true) {
+                try {
+                    scope = new Scope(definition.scope);
+                    int parameters = definition.method.getParameters().size();
+                    for (int i = 0; i < parameters; i++) {
+                        scope.defineVariable(definition.method.getParameters().get(i), arguments.get(i));
+                    }
 
-        return Environment.NIL;
+                    for (Ast.Stmt statement : definition.method.getStatements()) {
+                        visit(statement);
+                    }
 
+                }
+                catch (Return returnException) {
+                    return returnException.value;
+                }
+                catch (TailCall tailCall) {
+                    definition = tailCall.definition;
+                    arguments = tailCall.arguments;
+                    continue;
+                }
+                finally {
+                    scope = caller;
+                }
+                return Environment.NIL;
+            }
+        } finally {
+            invoking--;
+        }
     }
 
     @Override
@@ -180,6 +212,20 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Stmt.Return ast) {
         //throw new UnsupportedOperationException(); //TODO
+        if (invoking > 0 && ast.getValue() instanceof Ast.Expr.Function
+                && !((Ast.Expr.Function) ast.getValue()).getReceiver().isPresent()) {
+            Ast.Expr.Function call = (Ast.Expr.Function) ast.getValue();
+            List<Environment.PlcObject> arguments = new ArrayList<>();
+            for (Ast.Expr argument : call.getArguments()) {
+                arguments.add(visit(argument));
+            }
+            Environment.Function function = scope.lookupFunction(call.getName(), call.getArguments().size());
+            Definition definition = definitions.get(function);
+            if (definition != null) {
+                throw new TailCall(definition, arguments);
+            }
+            throw new Return(function.invoke(arguments));
+        }
         throw new Return(visit(ast.getValue()));
     }
 
@@ -463,5 +509,39 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     }
 
+    /**
+     * Exception class for tail calls, which unwinds the caller's statements
+     * and has no stack trace since it is thrown once per call.
+     */
+    private static class TailCall extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Definition definition;
+        private final List<Environment.PlcObject> arguments;
+
+        private TailCall(Definition definition, List<Environment.PlcObject> arguments) {
+            super(null, null, false, false);
+            this.definition = definition;
+            this.arguments = arguments;
+        }
+
+    }
+
+    /**
+     * A method of the source and the scope it was defined in.
+     */
+    private static final class Definition {
+
+        private final Ast.Method method;
+        private final Scope scope;
+
+        private Definition(Ast.Method method, Scope scope) {
+            this.method = method;
+            this.scope = scope;
+        }
+
+    }
+
 }
 
@@ -0,0 +1,694 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * An intermediate representation of methods as control flow graphs of basic
+ * blocks, which {@link IrLowering} builds from {@link Ast.Method}s.
+ *
+ * A {@link Function} is a list of {@link Block}s, the first being the entry.
+ * Each block holds {@link Phi}s, then {@link Instruction}s, and ends with a
+ * {@link Terminator} naming its successors. Instructions are themselves the
+ * {@link Value}s they compute, so operands refer to instructions directly.
+ *
+ * Once lowered, local variables are read and written with {@link Load} and
+ * {@link Store}; the {@link SsaBuilder} pass replaces those with the values
+ * stored and {@link Phi}s where control flow merges, putting the function in
+ * static single assignment form. Fields of the source are globals, accessed
+ * with {@link LoadGlobal} and {@link StoreGlobal} throughout.
+ */
+public final class Ir {
+
+    private Ir() {}
+
+    /**
+     * A transformation of a function, run by an {@link IrPassManager}.
+     */
+    public interface Pass {
+
+        void run(Function function);
+
+    }
+
+    public static final class Function {
+
+        private final String name;
+        private final List<Parameter> parameters = new ArrayList<>();
+        private final List<Block> blocks = new ArrayList<>();
+
+        public Function(String name, List<String> parameters) {
+            this.name = name;
+            for (int i = 0; i < parameters.size(); i++) {
+                this.parameters.add(new Parameter(parameters.get(i), i));
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Parameter> getParameters() {
+            return parameters;
+        }
+
+        public List<Block> getBlocks() {
+            return blocks;
+        }
+
+        public Block getEntry() {
+            return blocks.get(0);
+        }
+
+        public Block addBlock() {
+            Block block = new Block();
+            blocks.add(block);
+            return block;
+        }
+
+        /**
+         * Recomputes the predecessors of each block from the terminators.
+         */
+        public void updatePredecessors() {
+            for (Block block : blocks) {
+                block.predecessors.clear();
+            }
+            for (Block block : blocks) {
+                for (Block successor : block.getSuccessors()) {
+                    if (!successor.predecessors.contains(block)) {
+                        successor.predecessors.add(block);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes the blocks which can not be reached from the entry, along
+         * with the incoming values of phis from them, and updates the
+         * predecessors.
+         */
+        public void removeUnreachableBlocks() {
+            Set<Block> reachable = new HashSet<>(getReversePostorder());
+            blocks.retainAll(reachable);
+            for (Block block : blocks) {
+                for (Phi phi : block.getPhis()) {
+                    for (Block incoming : new ArrayList<>(phi.getBlocks())) {
+                        if (!reachable.contains(incoming)) {
+                            phi.removeIncoming(incoming);
+                        }
+                    }
+                }
+            }
+            updatePredecessors();
+        }
+
+        /**
+         * Returns the blocks reachable from the entry in reverse postorder, so
+         * that each block comes before its successors except along back edges.
+         */
+        public List<Block> getReversePostorder() {
+            List<Block> postorder = new ArrayList<>();
+            Set<Block> visited = new HashSet<>();
+            Deque<Block> stack = new ArrayDeque<>();
+            Deque<Integer> next = new ArrayDeque<>();
+            visited.add(getEntry());
+            stack.push(getEntry());
+            next.push(0);
+            while (!stack.isEmpty()) {
+                Block block = stack.peek();
+                int index = next.pop();
+                List<Block> successors = block.getSuccessors();
+                if (index < successors.size()) {
+                    next.push(index + 1);
+                    Block successor = successors.get(index);
+                    if (visited.add(successor)) {
+                        stack.push(successor);
+                        next.push(0);
+                    }
+                } else {
+                    stack.pop();
+                    postorder.add(block);
+                }
+            }
+            Collections.reverse(postorder);
+            return postorder;
+        }
+
+        /**
+         * Replaces every use of {@code value} as an operand with {@code
+         * replacement}.
+         */
+        public void replaceAllUses(Value value, Value replacement) {
+            for (Block block : blocks) {
+                for (Instruction instruction : block.getAll()) {
+                    for (int i = 0; i < instruction.operands.size(); i++) {
+                        if (instruction.operands.get(i) == value) {
+                            instruction.operands.set(i, replacement);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return IrPrinter.print(this);
+        }
+
+    }
+
+    public static final class Block {
+
+        private final List<Phi> phis = new ArrayList<>();
+        private final List<Instruction> instructions = new ArrayList<>();
+        private final List<Block> predecessors = new ArrayList<>();
+        private Terminator terminator;
+
+        public List<Phi> getPhis() {
+            return phis;
+        }
+
+        public List<Instruction> getInstructions() {
+            return instructions;
+        }
+
+        public Terminator getTerminator() {
+            return terminator;
+        }
+
+        public void setTerminator(Terminator terminator) {
+            this.terminator = terminator;
+        }
+
+        public boolean isTerminated() {
+            return terminator != null;
+        }
+
+        /**
+         * Returns the predecessors as of the last {@link
+         * Function#updatePredecessors()}.
+         */
+        public List<Block> getPredecessors() {
+            return predecessors;
+        }
+
+        public List<Block> getSuccessors() {
+            return terminator != null ? terminator.getSuccessors() : Collections.<Block>emptyList();
+        }
+
+        /**
+         * Returns the phis, instructions and terminator, in order.
+         */
+        public List<Instruction> getAll() {
+            List<Instruction> all = new ArrayList<>(phis.size() + instructions.size() + 1);
+            all.addAll(phis);
+            all.addAll(instructions);
+            if (terminator != null) {
+                all.add(terminator);
+            }
+            return all;
+        }
+
+    }
+
+    /**
+     * A local variable (a parameter or a variable declared by a {@code LET}
+     * or {@code FOR}) before SSA construction. Each declaration is its own
+     * variable, so shadowing variables are distinct.
+     */
+    public static final class Variable {
+
+        private final String name;
+
+        public Variable(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    public static abstract class Value {
+
+    }
+
+    public static final class Constant extends Value {
+
+        public static final Constant NIL = new Constant(null);
+
+        /**
+         * The value of a variable along a path where it is not declared,
+         * which SSA construction only leaves in phis no instruction uses.
+         */
+        public static final Constant UNDEFINED = new Constant(null);
+
+        private final Object value;
+
+        public Constant(Object value) {
+            this.value = value;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+    }
+
+    public static final class Parameter extends Value {
+
+        private final String name;
+        private final int index;
+
+        public Parameter(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+    }
+
+    public static abstract class Instruction extends Value {
+
+        protected final List<Value> operands;
+
+        protected Instruction(Value... operands) {
+            this.operands = new ArrayList<>(Arrays.asList(operands));
+        }
+
+        public List<Value> getOperands() {
+            return Collections.unmodifiableList(operands);
+        }
+
+        public void setOperand(int index, Value value) {
+            operands.set(index, value);
+        }
+
+        /**
+         * Returns true if the instruction computes a value other instructions
+         * may use.
+         */
+        public boolean hasValue() {
+            return true;
+        }
+
+        /**
+         * Returns true if the instruction can be removed when its value is
+         * not used, which is when it has no effects and can not fail.
+         */
+        public boolean isRemovable() {
+            return false;
+        }
+
+    }
+
+    public static final class Phi extends Instruction {
+
+        private final Variable variable;
+        private final List<Block> blocks = new ArrayList<>();
+
+        /**
+         * Creates a phi, for a variable if it merges the variable's values
+         * (during SSA construction) or else with a null variable.
+         */
+        public Phi(Variable variable) {
+            this.variable = variable;
+        }
+
+        public Variable getVariable() {
+            return variable;
+        }
+
+        /**
+         * Returns the blocks each operand comes from, in the same order.
+         */
+        public List<Block> getBlocks() {
+            return Collections.unmodifiableList(blocks);
+        }
+
+        public Value getIncoming(Block block) {
+            int index = blocks.indexOf(block);
+            return index >= 0 ? operands.get(index) : null;
+        }
+
+        public void setIncoming(Block block, Value value) {
+            int index = blocks.indexOf(block);
+            if (index >= 0) {
+                operands.set(index, value);
+            } else {
+                blocks.add(block);
+                operands.add(value);
+            }
+        }
+
+        public void removeIncoming(Block block) {
+            int index = blocks.indexOf(block);
+            if (index >= 0) {
+                blocks.remove(index);
+                operands.remove(index);
+            }
+        }
+
+        @Override
+        public boolean isRemovable() {
+            return true;
+        }
+
+    }
+
+    public static final class Binary extends Instruction {
+
+        private final String operator;
+
+        public Binary(String operator, Value left, Value right) {
+            super(left, right);
+            this.operator = operator;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public Value getLeft() {
+            return operands.get(0);
+        }
+
+        public Value getRight() {
+            return operands.get(1);
+        }
+
+        /**
+         * Returns true unless the operator is {@code /}, which fails when
+         * dividing by zero.
+         */
+        @Override
+        public boolean isRemovable() {
+            return !operator.equals("/");
+        }
+
+    }
+
+    /**
+     * A call of a function, or of a method if it has a receiver, which is the
+     * last operand since it is evaluated after the arguments.
+     */
+    public static final class Call extends Instruction {
+
+        private final String name;
+        private final boolean hasReceiver;
+
+        public Call(Optional<Value> receiver, String name, List<Value> arguments) {
+            super(arguments.toArray(new Value[0]));
+            this.name = name;
+            this.hasReceiver = receiver.isPresent();
+            receiver.ifPresent(operands::add);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Optional<Value> getReceiver() {
+            return hasReceiver ? Optional.of(operands.get(operands.size() - 1)) : Optional.empty();
+        }
+
+        public List<Value> getArguments() {
+            return Collections.unmodifiableList(operands.subList(0, operands.size() - (hasReceiver ? 1 : 0)));
+        }
+
+    }
+
+    public static final class GetField extends Instruction {
+
+        private final String name;
+
+        public GetField(Value receiver, String name) {
+            super(receiver);
+            this.name = name;
+        }
+
+        public Value getReceiver() {
+            return operands.get(0);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+    }
+
+    public static final class SetField extends Instruction {
+
+        private final String name;
+
+        public SetField(Value receiver, String name, Value value) {
+            super(receiver, value);
+            this.name = name;
+        }
+
+        public Value getReceiver() {
+            return operands.get(0);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Value getValue() {
+            return operands.get(1);
+        }
+
+        @Override
+        public boolean hasValue() {
+            return false;
+        }
+
+    }
+
+    public static final class Load extends Instruction {
+
+        private final Variable variable;
+
+        public Load(Variable variable) {
+            this.variable = variable;
+        }
+
+        public Variable getVariable() {
+            return variable;
+        }
+
+        @Override
+        public boolean isRemovable() {
+            return true;
+        }
+
+    }
+
+    public static final class Store extends Instruction {
+
+        private final Variable variable;
+
+        public Store(Variable variable, Value value) {
+            super(value);
+            this.variable = variable;
+        }
+
+        public Variable getVariable() {
+            return variable;
+        }
+
+        public Value getValue() {
+            return operands.get(0);
+        }
+
+        @Override
+        public boolean hasValue() {
+            return false;
+        }
+
+    }
+
+    public static final class LoadGlobal extends Instruction {
+
+        private final String name;
+
+        public LoadGlobal(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isRemovable() {
+            return true;
+        }
+
+    }
+
+    public static final class StoreGlobal extends Instruction {
+
+        private final String name;
+
+        public StoreGlobal(String name, Value value) {
+            super(value);
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Value getValue() {
+            return operands.get(0);
+        }
+
+        @Override
+        public boolean hasValue() {
+            return false;
+        }
+
+    }
+
+    /**
+     * Starts iterating over the value of a {@code FOR} loop.
+     */
+    public static final class Iterate extends Instruction {
+
+        public Iterate(Value iterable) {
+            super(iterable);
+        }
+
+        public Value getIterable() {
+            return operands.get(0);
+        }
+
+    }
+
+    public static final class HasNext extends Instruction {
+
+        public HasNext(Value iterator) {
+            super(iterator);
+        }
+
+        public Value getIterator() {
+            return operands.get(0);
+        }
+
+    }
+
+    public static final class Next extends Instruction {
+
+        public Next(Value iterator) {
+            super(iterator);
+        }
+
+        public Value getIterator() {
+            return operands.get(0);
+        }
+
+    }
+
+    public static abstract class Terminator extends Instruction {
+
+        protected Terminator(Value... operands) {
+            super(operands);
+        }
+
+        public abstract List<Block> getSuccessors();
+
+        @Override
+        public boolean hasValue() {
+            return false;
+        }
+
+    }
+
+    public static final class Jump extends Terminator {
+
+        private final Block target;
+
+        public Jump(Block target) {
+            this.target = target;
+        }
+
+        public Block getTarget() {
+            return target;
+        }
+
+        @Override
+        public List<Block> getSuccessors() {
+            return Collections.singletonList(target);
+        }
+
+    }
+
+    public static final class Branch extends Terminator {
+
+        private final Block thenBlock;
+        private final Block elseBlock;
+
+        public Branch(Value condition, Block thenBlock, Block elseBlock) {
+            super(condition);
+            this.thenBlock = thenBlock;
+            this.elseBlock = elseBlock;
+        }
+
+        public Value getCondition() {
+            return operands.get(0);
+        }
+
+        public Block getThenBlock() {
+            return thenBlock;
+        }
+
+        public Block getElseBlock() {
+            return elseBlock;
+        }
+
+        @Override
+        public List<Block> getSuccessors() {
+            return thenBlock == elseBlock ? Collections.singletonList(thenBlock) : Arrays.asList(thenBlock, elseBlock);
+        }
+
+    }
+
+    public static final class Return extends Terminator {
+
+        public Return(Value value) {
+            super(value);
+        }
+
+        public Value getValue() {
+            return operands.get(0);
+        }
+
+        @Override
+        public List<Block> getSuccessors() {
+            return Collections.emptyList();
+        }
+
+    }
+
+}
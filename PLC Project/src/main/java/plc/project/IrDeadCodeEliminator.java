@@ -0,0 +1,43 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Removes the instructions of a function whose values are never used and
+ * which are {@link Ir.Instruction#isRemovable() removable}, such as the
+ * arithmetic of an expression statement or the loads of a discarded value.
+ *
+ * Instructions are live if they are not removable or if a live instruction
+ * uses them, found by marking from the instructions which must stay, so that
+ * cycles of unused phis around loops are removed as well.
+ */
+public final class IrDeadCodeEliminator implements Ir.Pass {
+
+    @Override
+    public void run(Ir.Function function) {
+        Set<Ir.Instruction> live = new HashSet<>();
+        Deque<Ir.Instruction> worklist = new ArrayDeque<>();
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getAll()) {
+                if (!instruction.isRemovable() && live.add(instruction)) {
+                    worklist.push(instruction);
+                }
+            }
+        }
+        while (!worklist.isEmpty()) {
+            for (Ir.Value operand : worklist.pop().getOperands()) {
+                if (operand instanceof Ir.Instruction && live.add((Ir.Instruction) operand)) {
+                    worklist.push((Ir.Instruction) operand);
+                }
+            }
+        }
+        for (Ir.Block block : function.getBlocks()) {
+            block.getPhis().retainAll(live);
+            block.getInstructions().retainAll(live);
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Lowers methods into {@link Ir.Function}s, with a block for each straight
+ * sequence of statements and terminators for the control flow of {@code IF},
+ * {@code WHILE} and {@code FOR} statements, {@code RETURN}s and the short
+ * circuiting of {@code AND} and {@code OR}.
+ *
+ * Parameters and declared variables are lowered to {@link Ir.Variable}s read
+ * with {@link Ir.Load} and written with {@link Ir.Store}, following the scopes
+ * of the source so that shadowing variables are distinct; any other name is a
+ * global. Expressions are evaluated in the same order as the {@link
+ * Interpreter}. Blocks which can not be reached, such as those following a
+ * {@code RETURN}, are removed.
+ */
+public final class IrLowering {
+
+    private Ir.Function function;
+    private Ir.Block block;
+    private final Deque<Map<String, Ir.Variable>> scopes = new ArrayDeque<>();
+
+    public static List<Ir.Function> lower(Ast.Source source) {
+        List<Ir.Function> functions = new ArrayList<>();
+        for (Ast.Method method : source.getMethods()) {
+            functions.add(lower(method));
+        }
+        return functions;
+    }
+
+    public static Ir.Function lower(Ast.Method method) {
+        return new IrLowering().lowerMethod(method);
+    }
+
+    private IrLowering() {}
+
+    private Ir.Function lowerMethod(Ast.Method method) {
+        function = new Ir.Function(method.getName(), method.getParameters());
+        block = function.addBlock();
+        scopes.push(new HashMap<>());
+        for (Ir.Parameter parameter : function.getParameters()) {
+            block.getInstructions().add(new Ir.Store(declare(parameter.getName()), parameter));
+        }
+        lowerBlock(method.getStatements());
+        if (!block.isTerminated()) {
+            block.setTerminator(new Ir.Return(Ir.Constant.NIL));
+        }
+        function.removeUnreachableBlocks();
+        return function;
+    }
+
+    private void lowerBlock(List<Ast.Stmt> statements) {
+        scopes.push(new HashMap<>());
+        try {
+            for (Ast.Stmt statement : statements) {
+                lower(statement);
+            }
+        } finally {
+            scopes.pop();
+        }
+    }
+
+    private void lower(Ast.Stmt statement) {
+        if (statement instanceof Ast.Stmt.Expression) {
+            lower(((Ast.Stmt.Expression) statement).getExpression());
+        } else if (statement instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration stmt = (Ast.Stmt.Declaration) statement;
+            Ir.Value value = stmt.getValue().isPresent() ? lower(stmt.getValue().get()) : Ir.Constant.NIL;
+            add(new Ir.Store(declare(stmt.getName()), value));
+        } else if (statement instanceof Ast.Stmt.Assignment) {
+            lowerAssignment((Ast.Stmt.Assignment) statement);
+        } else if (statement instanceof Ast.Stmt.If) {
+            lowerIf((Ast.Stmt.If) statement);
+        } else if (statement instanceof Ast.Stmt.For) {
+            lowerFor((Ast.Stmt.For) statement);
+        } else if (statement instanceof Ast.Stmt.While) {
+            lowerWhile((Ast.Stmt.While) statement);
+        } else if (statement instanceof Ast.Stmt.Return) {
+            Ir.Value value = lower(((Ast.Stmt.Return) statement).getValue());
+            block.setTerminator(new Ir.Return(value));
+            block = function.addBlock();
+        } else {
+            throw new RuntimeException("Unexpected statement " + statement.getClass().getSimpleName() + ".");
+        }
+    }
+
+    private void lowerAssignment(Ast.Stmt.Assignment statement) {
+        if (!(statement.getReceiver() instanceof Ast.Expr.Access)) {
+            throw new RuntimeException("Receiver is not Ast.Expr.Access type");
+        }
+        Ast.Expr.Access receiver = (Ast.Expr.Access) statement.getReceiver();
+        if (receiver.getReceiver().isPresent()) {
+            Ir.Value object = lower(receiver.getReceiver().get());
+            add(new Ir.SetField(object, receiver.getName(), lower(statement.getValue())));
+        } else {
+            Ir.Value value = lower(statement.getValue());
+            Ir.Variable variable = lookup(receiver.getName());
+            add(variable != null ? new Ir.Store(variable, value) : new Ir.StoreGlobal(receiver.getName(), value));
+        }
+    }
+
+    private void lowerIf(Ast.Stmt.If statement) {
+        Ir.Value condition = lower(statement.getCondition());
+        Ir.Block thenBlock = function.addBlock();
+        Ir.Block elseBlock = statement.getElseStatements().isEmpty() ? null : function.addBlock();
+        Ir.Block join = function.addBlock();
+        block.setTerminator(new Ir.Branch(condition, thenBlock, elseBlock != null ? elseBlock : join));
+        block = thenBlock;
+        lowerBlock(statement.getThenStatements());
+        jump(join);
+        if (elseBlock != null) {
+            block = elseBlock;
+            lowerBlock(statement.getElseStatements());
+            jump(join);
+        }
+        block = join;
+    }
+
+    private void lowerWhile(Ast.Stmt.While statement) {
+        Ir.Block header = function.addBlock();
+        Ir.Block body = function.addBlock();
+        Ir.Block exit = function.addBlock();
+        jump(header);
+        block = header;
+        Ir.Value condition = lower(statement.getCondition());
+        block.setTerminator(new Ir.Branch(condition, body, exit));
+        block = body;
+        lowerBlock(statement.getStatements());
+        jump(header);
+        block = exit;
+    }
+
+    private void lowerFor(Ast.Stmt.For statement) {
+        Ir.Instruction iterator = add(new Ir.Iterate(lower(statement.getValue())));
+        Ir.Block header = function.addBlock();
+        Ir.Block body = function.addBlock();
+        Ir.Block exit = function.addBlock();
+        jump(header);
+        block = header;
+        Ir.Value hasNext = add(new Ir.HasNext(iterator));
+        block.setTerminator(new Ir.Branch(hasNext, body, exit));
+        block = body;
+        scopes.push(new HashMap<>());
+        try {
+            add(new Ir.Store(declare(statement.getName()), add(new Ir.Next(iterator))));
+            lowerBlock(statement.getStatements());
+        } finally {
+            scopes.pop();
+        }
+        jump(header);
+        block = exit;
+    }
+
+    private Ir.Value lower(Ast.Expr expr) {
+        if (expr instanceof Ast.Expr.Literal) {
+            Object literal = ((Ast.Expr.Literal) expr).getLiteral();
+            return literal == null ? Ir.Constant.NIL : new Ir.Constant(literal);
+        } else if (expr instanceof Ast.Expr.Group) {
+            return lower(((Ast.Expr.Group) expr).getExpression());
+        } else if (expr instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) expr;
+            if (binary.getOperator().equals("AND") || binary.getOperator().equals("OR")) {
+                return lowerShortCircuit(binary);
+            }
+            Ir.Value left = lower(binary.getLeft());
+            return add(new Ir.Binary(binary.getOperator(), left, lower(binary.getRight())));
+        } else if (expr instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) expr;
+            if (access.getReceiver().isPresent()) {
+                return add(new Ir.GetField(lower(access.getReceiver().get()), access.getName()));
+            }
+            Ir.Variable variable = lookup(access.getName());
+            return add(variable != null ? new Ir.Load(variable) : new Ir.LoadGlobal(access.getName()));
+        } else if (expr instanceof Ast.Expr.Function) {
+            Ast.Expr.Function call = (Ast.Expr.Function) expr;
+            List<Ir.Value> arguments = new ArrayList<>();
+            for (Ast.Expr argument : call.getArguments()) {
+                arguments.add(lower(argument));
+            }
+            Optional<Ir.Value> receiver = call.getReceiver().isPresent()
+                    ? Optional.of(lower(call.getReceiver().get()))
+                    : Optional.<Ir.Value>empty();
+            return add(new Ir.Call(receiver, call.getName(), arguments));
+        }
+        throw new RuntimeException("Unexpected expression " + expr.getClass().getSimpleName() + ".");
+    }
+
+    /**
+     * Lowers {@code AND} and {@code OR}, which only evaluate the right side
+     * if the left side does not decide the result, to a branch on the left
+     * side and a phi of the value from each path.
+     */
+    private Ir.Value lowerShortCircuit(Ast.Expr.Binary binary) {
+        Ir.Value left = lower(binary.getLeft());
+        Ir.Block leftBlock = block;
+        Ir.Block right = function.addBlock();
+        Ir.Block join = function.addBlock();
+        boolean and = binary.getOperator().equals("AND");
+        block.setTerminator(and ? new Ir.Branch(left, right, join) : new Ir.Branch(left, join, right));
+        block = right;
+        Ir.Value value = lower(binary.getRight());
+        Ir.Block rightBlock = block;
+        jump(join);
+        block = join;
+        Ir.Phi phi = new Ir.Phi(null);
+        phi.setIncoming(leftBlock, left);
+        phi.setIncoming(rightBlock, value);
+        join.getPhis().add(phi);
+        return phi;
+    }
+
+    private Ir.Instruction add(Ir.Instruction instruction) {
+        block.getInstructions().add(instruction);
+        return instruction;
+    }
+
+    /**
+     * Ends the current block with a jump, unless it already ended with a
+     * {@code RETURN}.
+     */
+    private void jump(Ir.Block target) {
+        if (!block.isTerminated()) {
+            block.setTerminator(new Ir.Jump(target));
+        }
+    }
+
+    private Ir.Variable declare(String name) {
+        Ir.Variable variable = new Ir.Variable(name);
+        scopes.peek().put(name, variable);
+        return variable;
+    }
+
+    private Ir.Variable lookup(String name) {
+        for (Map<String, Ir.Variable> scope : scopes) {
+            Ir.Variable variable = scope.get(name);
+            if (variable != null) {
+                return variable;
+            }
+        }
+        return null;
+    }
+
+}
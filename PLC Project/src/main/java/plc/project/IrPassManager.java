@@ -0,0 +1,165 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs a sequence of {@link Ir.Pass}es over functions in order.
+ *
+ * Verifying is off by default, since it computes dominators and walks every
+ * instruction again for each pass, and is meant for tests and for developing
+ * passes. When on, the function is checked to be well formed before the first
+ * pass and after each one, so that a broken pass is reported by name rather
+ * than by whichever pass later trips over its output.
+ *
+ * The {@link #IrPassManager() default} passes put a function in SSA form and
+ * remove its dead code.
+ */
+public final class IrPassManager {
+
+    private final boolean verifying;
+    private final List<Ir.Pass> passes;
+
+    public IrPassManager() {
+        this(false);
+    }
+
+    /**
+     * Creates a pass manager running the default passes.
+     */
+    public IrPassManager(boolean verifying) {
+        this(verifying, new SsaBuilder(), new IrDeadCodeEliminator());
+    }
+
+    public IrPassManager(Ir.Pass... passes) {
+        this(false, passes);
+    }
+
+    public IrPassManager(boolean verifying, Ir.Pass... passes) {
+        this.verifying = verifying;
+        this.passes = new ArrayList<>(Arrays.asList(passes));
+    }
+
+    public boolean isVerifying() {
+        return verifying;
+    }
+
+    public List<Ir.Pass> getPasses() {
+        return Collections.unmodifiableList(passes);
+    }
+
+    public IrPassManager add(Ir.Pass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    public List<Ir.Function> run(List<Ir.Function> functions) {
+        for (Ir.Function function : functions) {
+            run(function);
+        }
+        return functions;
+    }
+
+    public Ir.Function run(Ir.Function function) {
+        if (verifying) {
+            verify(function, "lowering");
+        }
+        for (Ir.Pass pass : passes) {
+            pass.run(function);
+            if (verifying) {
+                verify(function, pass.getClass().getSimpleName());
+            }
+        }
+        return function;
+    }
+
+    /**
+     * Checks, without changing the function, that every block is reachable
+     * and ends with a terminator to a block of the function, that the
+     * predecessors are up to date, that each phi has one operand per
+     * predecessor and that instructions only use values of the function which
+     * dominate them.
+     */
+    static void verify(Ir.Function function, String after) {
+        List<Ir.Block> order = function.getBlocks();
+        Set<Ir.Block> blocks = new HashSet<>(order);
+        Map<Ir.Block, Set<Ir.Block>> predecessors = new HashMap<>();
+        Map<Ir.Block, List<Ir.Instruction>> instructions = new HashMap<>();
+        Map<Ir.Instruction, Ir.Block> definitions = new HashMap<>();
+        Map<Ir.Instruction, Integer> indices = new HashMap<>();
+        for (Ir.Block block : order) {
+            predecessors.put(block, new HashSet<>());
+            List<Ir.Instruction> all = block.getAll();
+            instructions.put(block, all);
+            for (int i = 0; i < all.size(); i++) {
+                definitions.put(all.get(i), block);
+                indices.put(all.get(i), i);
+            }
+        }
+        for (Ir.Block block : order) {
+            if (!block.isTerminated()) {
+                throw error(function, after, "has a block without a terminator");
+            }
+            for (Ir.Block successor : block.getSuccessors()) {
+                if (!blocks.contains(successor)) {
+                    throw error(function, after, "jumps to a block of another function");
+                }
+                predecessors.get(successor).add(block);
+            }
+        }
+        for (Ir.Block block : order) {
+            if (block.getPredecessors().size() != predecessors.get(block).size()
+                    || !predecessors.get(block).containsAll(block.getPredecessors())) {
+                throw error(function, after, "has predecessors which are out of date");
+            }
+        }
+        Dominators dominators = Dominators.of(function);
+        if (dominators.getBlocks().size() != order.size()) {
+            throw error(function, after, "has unreachable blocks");
+        }
+        for (Ir.Block block : order) {
+            for (Ir.Phi phi : block.getPhis()) {
+                if (phi.getBlocks().size() != predecessors.get(block).size()
+                        || !predecessors.get(block).containsAll(phi.getBlocks())) {
+                    throw error(function, after, "has a phi without one operand per predecessor");
+                }
+                for (Ir.Block incoming : phi.getBlocks()) {
+                    Ir.Value operand = phi.getIncoming(incoming);
+                    if (operand instanceof Ir.Instruction) {
+                        Ir.Block definition = definitions.get(operand);
+                        if (definition == null || !((Ir.Instruction) operand).hasValue()) {
+                            throw error(function, after, "uses an instruction which is not a value of the function");
+                        } else if (!dominators.dominates(definition, incoming)) {
+                            throw error(function, after, "has a phi operand which does not dominate its predecessor");
+                        }
+                    }
+                }
+            }
+            List<Ir.Instruction> all = instructions.get(block);
+            for (int i = block.getPhis().size(); i < all.size(); i++) {
+                for (Ir.Value operand : all.get(i).getOperands()) {
+                    if (!(operand instanceof Ir.Instruction)) {
+                        continue;
+                    }
+                    Ir.Block definition = definitions.get(operand);
+                    if (definition == null || !((Ir.Instruction) operand).hasValue()) {
+                        throw error(function, after, "uses an instruction which is not a value of the function");
+                    } else if (definition == block ? indices.get(operand) >= i : !dominators.dominates(definition, block)) {
+                        throw error(function, after, "uses a value before it is defined");
+                    }
+                }
+            }
+        }
+    }
+
+    private static RuntimeException error(Ir.Function function, String after, String message) {
+        return new RuntimeException("Function " + function.getName() + " " + message + " after " + after + ".");
+    }
+
+}
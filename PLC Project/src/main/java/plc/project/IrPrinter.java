@@ -0,0 +1,201 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prints an {@link Ir.Function} as text, one block per label and one
+ * instruction per line, such as
+ *
+ * <pre>
+ * f(n) {
+ * b0:
+ *     %0 = n > 0
+ *     branch %0, b1, b2
+ * b1: ; preds b0
+ *     %1 = call print(n)
+ *     return %1
+ * b2: ; preds b0
+ *     return NIL
+ * }
+ * </pre>
+ *
+ * Blocks are numbered in the order of the function and values in the order
+ * they are defined. Parameters are printed by name, local variables by name
+ * with a suffix to tell apart variables with the same name, and globals by
+ * name with an {@code @}.
+ */
+public final class IrPrinter {
+
+    private final StringBuilder builder = new StringBuilder();
+    private final Map<Ir.Block, String> blocks = new HashMap<>();
+    private final Map<Ir.Value, String> values = new HashMap<>();
+    private final Map<Ir.Variable, String> variables = new HashMap<>();
+    private final Set<String> variableNames = new HashSet<>();
+
+    public static String print(Ir.Function function) {
+        return new IrPrinter().printFunction(function);
+    }
+
+    public static String print(List<Ir.Function> functions) {
+        List<String> printed = new ArrayList<>();
+        for (Ir.Function function : functions) {
+            printed.add(print(function));
+        }
+        return String.join("\n", printed);
+    }
+
+    private IrPrinter() {}
+
+    private String printFunction(Ir.Function function) {
+        List<String> parameters = new ArrayList<>();
+        for (Ir.Parameter parameter : function.getParameters()) {
+            values.put(parameter, parameter.getName());
+            parameters.add(parameter.getName());
+        }
+        for (Ir.Block block : function.getBlocks()) {
+            blocks.put(block, "b" + blocks.size());
+        }
+        int count = 0;
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getAll()) {
+                if (instruction.hasValue()) {
+                    values.put(instruction, "%" + count++);
+                }
+            }
+        }
+        builder.append(function.getName()).append('(').append(String.join(", ", parameters)).append(") {\n");
+        for (Ir.Block block : function.getBlocks()) {
+            builder.append(blocks.get(block)).append(':');
+            if (!block.getPredecessors().isEmpty()) {
+                List<String> predecessors = new ArrayList<>();
+                for (Ir.Block predecessor : block.getPredecessors()) {
+                    predecessors.add(name(predecessor));
+                }
+                builder.append(" ; preds ").append(String.join(", ", predecessors));
+            }
+            builder.append('\n');
+            for (Ir.Instruction instruction : block.getAll()) {
+                builder.append("    ");
+                if (instruction.hasValue()) {
+                    builder.append(values.get(instruction)).append(" = ");
+                }
+                printInstruction(instruction);
+                builder.append('\n');
+            }
+        }
+        return builder.append("}\n").toString();
+    }
+
+    private void printInstruction(Ir.Instruction instruction) {
+        if (instruction instanceof Ir.Phi) {
+            Ir.Phi phi = (Ir.Phi) instruction;
+            List<String> incoming = new ArrayList<>();
+            for (Ir.Block block : phi.getBlocks()) {
+                incoming.add(name(block) + ": " + name(phi.getIncoming(block)));
+            }
+            builder.append("phi [").append(String.join(", ", incoming)).append(']');
+        } else if (instruction instanceof Ir.Binary) {
+            Ir.Binary binary = (Ir.Binary) instruction;
+            builder.append(name(binary.getLeft())).append(' ').append(binary.getOperator()).append(' ')
+                    .append(name(binary.getRight()));
+        } else if (instruction instanceof Ir.Call) {
+            Ir.Call call = (Ir.Call) instruction;
+            List<String> arguments = new ArrayList<>();
+            for (Ir.Value argument : call.getArguments()) {
+                arguments.add(name(argument));
+            }
+            builder.append("call ");
+            if (call.getReceiver().isPresent()) {
+                builder.append(name(call.getReceiver().get())).append('.');
+            }
+            builder.append(call.getName()).append('(').append(String.join(", ", arguments)).append(')');
+        } else if (instruction instanceof Ir.GetField) {
+            Ir.GetField get = (Ir.GetField) instruction;
+            builder.append(name(get.getReceiver())).append('.').append(get.getName());
+        } else if (instruction instanceof Ir.SetField) {
+            Ir.SetField set = (Ir.SetField) instruction;
+            builder.append(name(set.getReceiver())).append('.').append(set.getName()).append(" = ")
+                    .append(name(set.getValue()));
+        } else if (instruction instanceof Ir.Load) {
+            builder.append("load ").append(name(((Ir.Load) instruction).getVariable()));
+        } else if (instruction instanceof Ir.Store) {
+            Ir.Store store = (Ir.Store) instruction;
+            builder.append("store ").append(name(store.getVariable())).append(", ").append(name(store.getValue()));
+        } else if (instruction instanceof Ir.LoadGlobal) {
+            builder.append("load @").append(((Ir.LoadGlobal) instruction).getName());
+        } else if (instruction instanceof Ir.StoreGlobal) {
+            Ir.StoreGlobal store = (Ir.StoreGlobal) instruction;
+            builder.append("store @").append(store.getName()).append(", ").append(name(store.getValue()));
+        } else if (instruction instanceof Ir.Iterate) {
+            builder.append("iterate ").append(name(((Ir.Iterate) instruction).getIterable()));
+        } else if (instruction instanceof Ir.HasNext) {
+            builder.append("hasnext ").append(name(((Ir.HasNext) instruction).getIterator()));
+        } else if (instruction instanceof Ir.Next) {
+            builder.append("next ").append(name(((Ir.Next) instruction).getIterator()));
+        } else if (instruction instanceof Ir.Jump) {
+            builder.append("jump ").append(name(((Ir.Jump) instruction).getTarget()));
+        } else if (instruction instanceof Ir.Branch) {
+            Ir.Branch branch = (Ir.Branch) instruction;
+            builder.append("branch ").append(name(branch.getCondition())).append(", ")
+                    .append(name(branch.getThenBlock())).append(", ").append(name(branch.getElseBlock()));
+        } else if (instruction instanceof Ir.Return) {
+            builder.append("return ").append(name(((Ir.Return) instruction).getValue()));
+        } else {
+            builder.append(instruction.getClass().getSimpleName().toLowerCase());
+        }
+    }
+
+    private String name(Ir.Block block) {
+        String name = blocks.get(block);
+        return name != null ? name : "<missing block>";
+    }
+
+    private String name(Ir.Variable variable) {
+        String name = variables.get(variable);
+        if (name == null) {
+            name = variable.getName();
+            for (int i = 1; !variableNames.add(name); i++) {
+                name = variable.getName() + "." + i;
+            }
+            variables.put(variable, name);
+        }
+        return name;
+    }
+
+    private String name(Ir.Value value) {
+        if (value == Ir.Constant.UNDEFINED) {
+            return "undef";
+        } else if (value instanceof Ir.Constant) {
+            return literal(((Ir.Constant) value).getValue());
+        }
+        String name = values.get(value);
+        return name != null ? name : "<missing value>";
+    }
+
+    private static String literal(Object literal) {
+        if (literal == null) {
+            return "NIL";
+        } else if (literal instanceof Boolean) {
+            return (Boolean) literal ? "TRUE" : "FALSE";
+        } else if (literal instanceof BigDecimal) {
+            return ((BigDecimal) literal).toPlainString();
+        } else if (literal instanceof Character) {
+            return "'" + escape(literal.toString()) + "'";
+        } else if (literal instanceof String) {
+            return "\"" + escape((String) literal) + "\"";
+        }
+        return literal.toString();
+    }
+
+    private static String escape(String string) {
+        return string.replace("\\", "\\\\").replace("\"", "\\\"").replace("'", "\\'")
+                .replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t").replace("\b", "\\b");
+    }
+
+}
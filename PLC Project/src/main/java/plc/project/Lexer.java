@@ -1,8 +1,22 @@
 package plc.project;
 
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 
 /**
@@ -16,69 +30,413 @@ import java.util.regex.Pattern;
  * should throw a {@link ParseException} with an index at the character which is
  * invalid or missing.
  *
- * The {@link #peek(String...)} and {@link #match(String...)} functions are
- * helpers you need to use, they will make the implementation a lot easier.
+ * Characters are classified with the {@link #CLASSES} table and the char codes
+ * themselves rather than regex patterns, so lexing does not compile a pattern
+ * or allocate a string for each character it looks at. The original regex
+ * implementation is kept as {@link ReferenceLexer}, and a lexer created with
+ * {@code verify} set checks its output against it.
+ *
+ * Tokens refer back to the input rather than copying their literal, and are
+ * classified into their {@link Token.Kind} as they are emitted (see {@link
+ * Token}). The value of string and character literals is decoded in the
+ * same pass which scans them and attached to the token.
+ *
+ * Instead of {@link #lex()}, tokens can also be pulled one at a time through
+ * {@link #tokens()} so that a {@link Parser} can start before the whole input
+ * has been lexed, or lexed in parallel with {@link #lexParallel()}. After an
+ * edit, {@link #relex} lexes only the part of the tokens which changed.
  */
 public final class Lexer {
 
+    private static final int WHITESPACE = 1;
+    private static final int IDENTIFIER_START = 2;
+    private static final int IDENTIFIER_PART = 4;
+    private static final int DIGIT = 8;
+    private static final int SIGN = 16;
+    private static final int COMPARISON = 32;
+
+    /**
+     * Character classes of the ASCII range, indexed by char code. Characters
+     * outside of ASCII have no class and lex as single character operators.
+     */
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        for (char c : new char[] {' ', '\b', '\n', '\r', '\t'}) {
+            CLASSES[c] |= WHITESPACE;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            CLASSES[c] |= IDENTIFIER_START | IDENTIFIER_PART;
+            CLASSES[c + ('a' - 'A')] |= IDENTIFIER_START | IDENTIFIER_PART;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CLASSES[c] |= DIGIT | IDENTIFIER_PART;
+        }
+        CLASSES['_'] |= IDENTIFIER_START | IDENTIFIER_PART;
+        CLASSES['-'] |= IDENTIFIER_PART | SIGN;
+        CLASSES['+'] |= SIGN;
+        for (char c : new char[] {'<', '>', '!', '='}) {
+            CLASSES[c] |= COMPARISON;
+        }
+    }
+
+    /**
+     * The approximate number of characters each task of {@link #lexParallel()}
+     * lexes; inputs shorter than this are lexed sequentially.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final CharSequence input;
+    private final boolean verify;
     private final CharStream chars;
 
+    /**
+     * The decoded value of the string or character literal being scanned.
+     */
+    private final StringBuilder value = new StringBuilder();
 
-    Pattern CHARACTER = Pattern.compile("\'[^']|[\\\\][bnrt'\"]\'");
-    Pattern STRING = Pattern.compile("\"([^\\\\\"]|[\\\\][bnrt'])*\"");
+    public Lexer(CharSequence input) {
+        this(input, false);
+    }
 
-    public Lexer(String input) {
+    /**
+     * If {@code verify} is true, {@link #lex()} also lexes the input with the
+     * {@link ReferenceLexer} and throws an {@link IllegalStateException} if the
+     * tokens (or the {@link ParseException} thrown) are not identical.
+     */
+    public Lexer(CharSequence input, boolean verify) {
+        this.input = input;
+        this.verify = verify;
         chars = new CharStream(input);
     }
 
+    /**
+     * Creates a lexer for the characters of {@code input} between {@code
+     * start} and {@code end}, which emits tokens at their index in the whole
+     * input.
+     */
+    private Lexer(CharSequence input, int start, int end) {
+        this.input = input;
+        this.verify = false;
+        chars = new CharStream(input, start, end);
+    }
+
+    /**
+     * Creates a lexer over the contents of the given UTF-8 file. The file is
+     * memory-mapped and decoded straight into a {@link java.nio.CharBuffer}, so
+     * the source is never copied into an intermediate String. Files larger than
+     * {@link Integer#MAX_VALUE} bytes cannot be mapped in one region.
+     */
+    public static Lexer fromPath(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Lexer(StandardCharsets.UTF_8.newDecoder().decode(buffer));
+        }
+    }
+
     /**
      * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
      * whitespace where appropriate.
      */
+    public List<Token> lex() {
+        if (!verify) {
+            return lexAll();
+        }
+        List<Token> tokens = null;
+        ParseException exception = null;
+        try {
+            tokens = lexAll();
+        } catch (ParseException e) {
+            exception = e;
+        }
+        List<Token> expected = null;
+        ParseException expectedException = null;
+        try {
+            expected = new ReferenceLexer(input.toString()).lex();
+        } catch (ParseException e) {
+            expectedException = e;
+        }
+        if (exception != null || expectedException != null) {
+            if (exception == null || expectedException == null
+                    || exception.getIndex() != expectedException.getIndex()
+                    || !exception.getMessage().equals(expectedException.getMessage())) {
+                throw new IllegalStateException("Lexer mismatch: expected " + describe(expectedException, expected)
+                        + ", received " + describe(exception, tokens) + ".");
+            }
+            throw exception;
+        }
+        if (!tokens.equals(expected)) {
+            throw new IllegalStateException("Lexer mismatch: expected " + expected + ", received " + tokens + ".");
+        }
+        return tokens;
+    }
+
+    private List<Token> lexAll() {
+        List<Token> tokens = new ArrayList<>();
+        while (skipWhitespace()) {
+            // We are at the beginning of the next lexeme.
+            tokens.add(lexToken());
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes the input in parallel on the common {@link ForkJoinPool}, see
+     * {@link #lexParallel(ForkJoinPool)}.
+     */
+    public List<Token> lexParallel() {
+        return lexParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lexes the input in chunks of roughly {@link #CHUNK_SIZE} characters on
+     * the given pool, producing the same tokens as {@link #lex()}.
+     *
+     * Chunks are split just after a newline. String and character literals
+     * cannot contain a newline, so a newline is always outside of a literal and
+     * between two tokens, and the chunks lex exactly as they do sequentially.
+     * If the input is invalid, the exception of the first chunk which failed is
+     * thrown, which is the exception {@link #lex()} would have thrown as every
+     * chunk before it lexed successfully.
+     */
+    public List<Token> lexParallel(ForkJoinPool pool) {
+        List<Callable<List<Token>>> tasks = new ArrayList<>();
+        int start = chars.index;
+        while (start < chars.end) {
+            int end = split(start);
+            int chunkStart = start;
+            tasks.add(() -> new Lexer(input, chunkStart, end).lexAll());
+            start = end;
+        }
+        if (tasks.size() <= 1) {
+            return lexAll();
+        }
+        List<List<Token>> chunks = new ArrayList<>();
+        int size = 0;
+        for (Future<List<Token>> result : pool.invokeAll(tasks)) {
+            try {
+                chunks.add(result.get());
+                size += chunks.get(chunks.size() - 1).size();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ParseException) {
+                    throw (ParseException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        List<Token> tokens = new ArrayList<>(size);
+        for (List<Token> chunk : chunks) {
+            tokens.addAll(chunk);
+        }
+        chars.index = chars.end;
+        return tokens;
+    }
 
-    //helper function
-    //source: https://www.craftinginterpreters.com/scanning.html
-    private boolean isAtEnd() {
-        return chars.index >= chars.input.length();
+    /**
+     * Returns the end of the chunk starting at {@code start}, which is just
+     * after the first newline at least {@link #CHUNK_SIZE} characters later or
+     * the end of the input.
+     */
+    private int split(int start) {
+        int index = start + CHUNK_SIZE;
+        while (index < chars.end && input.charAt(index - 1) != '\n') {
+            index++;
+        }
+        return Math.min(index, chars.end);
     }
 
-    private boolean isWhitespace() {
-        if (chars.get(0) == ' ') {
-            return true;
+    /**
+     * Lexes the source after an edit replacing {@code removed} characters at
+     * {@code offset} with {@code inserted}, given the tokens of {@code source}
+     * before the edit (as returned by {@link #lex()}). The source itself is not
+     * modified.
+     *
+     * A token only depends on the characters from its start up to two past its
+     * end (for a {@code .} followed by a digit), so lexing restarts after the
+     * last token which ends at least two characters before the edit. Because
+     * the lexer has no other state between tokens, it has resynchronized as
+     * soon as a token starts after the inserted text where an old token started
+     * before the edit, and the remaining old tokens are moved by the change in
+     * length instead of being lexed again. Lexing is therefore proportional to
+     * the size of the edit, although the tokens after it are still copied when
+     * the length changes.
+     */
+    public static Relexed relex(CharSequence source, List<Token> tokens, int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > source.length()) {
+            throw new IndexOutOfBoundsException("Edit of " + removed + " characters at " + offset + " is outside of the source of length " + source.length() + ".");
         }
-        else if (chars.get(0) == '\b') {
-            return true;
+        String edited = new StringBuilder(source.length() - removed + inserted.length())
+                .append(source, 0, offset)
+                .append(inserted)
+                .append(source, offset + removed, source.length())
+                .toString();
+        int delta = inserted.length() - removed;
+        int editEnd = offset + inserted.length();
+
+        int start = 0;
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            Token token = tokens.get(middle);
+            if (token.getIndex() + token.getLength() + 2 <= offset) {
+                start = middle + 1;
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
         }
-        else if (chars.get(0) == '\n') {
-            return true;
+        int restart = start == 0 ? 0 : tokens.get(start - 1).getIndex() + tokens.get(start - 1).getLength();
+
+        Lexer lexer = new Lexer(edited, restart, edited.length());
+        List<Token> relexed = new ArrayList<>();
+        int old = start;
+        int oldEnd = tokens.size();
+        while (lexer.skipWhitespace()) {
+            int index = lexer.chars.index;
+            if (index >= editEnd) {
+                while (old < tokens.size() && tokens.get(old).getIndex() < index - delta) {
+                    old++;
+                }
+                if (old < tokens.size() && tokens.get(old).getIndex() == index - delta) {
+                    oldEnd = old;
+                    break;
+                }
+            }
+            relexed.add(lexer.lexToken());
         }
-        else if (chars.get(0) == '\r') {
-            return true;
+
+        // Tokens relexed exactly as before the edit are not part of the change.
+        int unchanged = 0;
+        while (unchanged < relexed.size() && start < oldEnd) {
+            Token before = tokens.get(start);
+            Token after = relexed.get(unchanged);
+            if (after.getIndex() + after.getLength() > offset || after.getType() != before.getType()
+                    || after.getIndex() != before.getIndex() || after.getLength() != before.getLength()) {
+                break;
+            }
+            start++;
+            unchanged++;
         }
-        else if (chars.get(0) == '\t') {
-            return true;
+
+        List<Token> result = new ArrayList<>(start + relexed.size() - unchanged + tokens.size() - oldEnd);
+        result.addAll(tokens.subList(0, start));
+        result.addAll(relexed.subList(unchanged, relexed.size()));
+        int newEnd = result.size();
+        for (Token token : tokens.subList(oldEnd, tokens.size())) {
+            result.add(delta == 0 ? token : token.moveTo(edited, token.getIndex() + delta));
         }
+        return new Relexed(edited, result, start, oldEnd, newEnd);
+    }
 
-        return false;
+    /**
+     * Lexes the whole input into a {@link TokenBuffer}, which stores the tokens
+     * in packed arrays instead of creating a {@link Token} for each.
+     */
+    public TokenBuffer lexBuffer() {
+        TokenBuffer buffer = new TokenBuffer(input);
+        while (skipWhitespace()) {
+            Token.Type type = scanToken();
+            buffer.add(type, chars.index - chars.length, chars.length, hasValue(type) ? value.toString() : null);
+            chars.skip();
+        }
+        return buffer;
     }
 
+    /**
+     * Returns an iterator which lexes the next token each time it is advanced,
+     * so only the tokens the consumer holds on to are kept in memory. The
+     * iterator shares the state of this lexer and can only be used once, and
+     * lexing errors are thrown as {@link ParseException}s from {@code next()}.
+     */
+    public Iterator<Token> tokens() {
+        return new Iterator<Token>() {
 
+            @Override
+            public boolean hasNext() {
+                return skipWhitespace();
+            }
 
-    public List<Token> lex() {
-        List<Token> tokens = new ArrayList<>();
-        while (!isAtEnd()) {
-            if (isWhitespace()) {
-                chars.advance();
-                chars.skip();
+            @Override
+            public Token next() {
+                if (!skipWhitespace()) {
+                    throw new NoSuchElementException();
+                }
+                return lexToken();
             }
-            // We are at the beginning of the next lexeme.
-            else{
-                tokens.add(lexToken());
+
+        };
+    }
+
+    /**
+     * Returns the tokens of {@link #tokens()} as an ordered, sequential
+     * {@link Spliterator}, for use with {@code StreamSupport.stream}.
+     */
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(tokens(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Skips whitespace, returning true if there is a token left to lex.
+     */
+    private boolean skipWhitespace() {
+        advanceWhile(WHITESPACE);
+        chars.skip();
+        return chars.has(0);
+    }
+
+    /**
+     * Advances past the run of characters belonging to any of the given
+     * classes. The run is scanned in a single loop over the backing array of
+     * the input (or the String itself) instead of one {@link CharStream#has}
+     * and {@link CharStream#get} per character, which is where most of the
+     * time goes on indentation and long identifiers.
+     */
+    private void advanceWhile(int classes) {
+        int index = chars.index;
+        int end = chars.end;
+        if (chars.array != null) {
+            char[] array = chars.array;
+            int offset = chars.offset;
+            while (index < end) {
+                char c = array[offset + index];
+                if (c >= CLASSES.length || (CLASSES[c] & classes) == 0) {
+                    break;
+                }
+                index++;
             }
         }
-        return tokens;
-
+        else if (chars.input instanceof String) {
+            String input = (String) chars.input;
+            while (index < end) {
+                char c = input.charAt(index);
+                if (c >= CLASSES.length || (CLASSES[c] & classes) == 0) {
+                    break;
+                }
+                index++;
+            }
+        }
+        else {
+            CharSequence input = chars.input;
+            while (index < end) {
+                char c = input.charAt(index);
+                if (c >= CLASSES.length || (CLASSES[c] & classes) == 0) {
+                    break;
+                }
+                index++;
+            }
+        }
+        chars.advance(index - chars.index);
+    }
 
+    private static String describe(ParseException exception, List<Token> tokens) {
+        if (exception != null) {
+            return "ParseException(" + exception.getMessage() + "@" + exception.getIndex() + ")";
+        }
+        return String.valueOf(tokens);
     }
 
     /**
@@ -90,206 +448,269 @@ public final class Lexer {
      * by {@link #lex()}
      */
     public Token lexToken() {
-        if(peek("[A-Za-z_]")) {   // Identifier cannot start with a digit or hyphen so it is excluded, only starts with underscore or letter.
-            return lexIdentifier();
-        }
-        if(peek("[+\\-]","[0-9]") || peek("[0-9]")) {  // Produces the token for a Integer/Decimal, either a number 0-9 or if it starts with a + or - , cannot start with decimal point.
-            return lexNumber();
-        }
-        char c = chars.get(0);
-        switch (c) {
-            case '\"': return lexString();
-            case '\'': return lexCharacter();
-            case '<': return lexOperator();
-            case '>': return lexOperator();
-            case '!': return lexOperator();
-            case '=': return lexOperator();
+        return emit(scanToken());
+    }
 
+    public Token lexIdentifier() {
+        return emit(scanIdentifier());
+    }
 
-            default: return lexOperator();
-        }
+    public Token lexNumber() {
+        return emit(scanNumber());
+    }
 
+    public Token lexCharacter() {
+        return emit(scanCharacter());
     }
 
-    public Token lexIdentifier() {
-        //throw new UnsupportedOperationException(); //TODO
-        while (!isAtEnd() &&match("[A-Za-z0-9_-]")){};
-        return chars.emit(Token.Type.IDENTIFIER);
+    public Token lexString() {
+        return emit(scanString());
+    }
 
+    public void lexEscape() {
+        throw new ParseException("Invalid String", chars.index);
     }
 
-    public Token lexNumber() {
-        //throw new UnsupportedOperationException(); //TODO
-        match("[+-]"); // Handles the negative/positive numbers
-        while(!isAtEnd() && match("[0-9]")){}
-        if(!isAtEnd() && match("[\\.]","[0-9]")){
-            while(!isAtEnd()&& match("[0-9]")){}
-            return chars.emit(Token.Type.DECIMAL);
+    public Token lexOperator() {
+        return emit(scanOperator());
+    }
+
+    /**
+     * Emits the token which has just been scanned, with the decoded value of a
+     * string or character literal.
+     */
+    private Token emit(Token.Type type) {
+        return hasValue(type) ? chars.emit(type, value.toString()) : chars.emit(type);
+    }
+
+    private static boolean hasValue(Token.Type type) {
+        return type == Token.Type.STRING || type == Token.Type.CHARACTER;
+    }
+
+    /**
+     * The scan methods advance the char stream past the next token and return
+     * its type without emitting it, so that {@link #lexBuffer()} can record the
+     * token without creating a {@link Token}.
+     */
+    private Token.Type scanToken() {
+        char c = chars.get(0);
+        if (is(c, IDENTIFIER_START)) {   // Identifier cannot start with a digit or hyphen so it is excluded, only starts with underscore or letter.
+            return scanIdentifier();
+        }
+        if (is(c, DIGIT) || is(c, SIGN) && peek(1, DIGIT)) {  // Produces the token for a Integer/Decimal, either a number 0-9 or if it starts with a + or - , cannot start with decimal point.
+            return scanNumber();
+        }
+        switch (c) {
+            case '"': return scanString();
+            case '\'': return scanCharacter();
+            default: return scanOperator();
         }
-        return chars.emit(Token.Type.INTEGER);
     }
 
-    public Token lexCharacter() {
+    private Token.Type scanIdentifier() {
+        advanceWhile(IDENTIFIER_PART);
+        return Token.Type.IDENTIFIER;
+    }
+
+    private Token.Type scanNumber() {
+        if (peek(0, SIGN)) { // Handles the negative/positive numbers
+            chars.advance();
+        }
+        advanceWhile(DIGIT);
+        if (chars.has(0) && chars.get(0) == '.' && peek(1, DIGIT)) {
+            chars.advance();
+            advanceWhile(DIGIT);
+            return Token.Type.DECIMAL;
+        }
+        return Token.Type.INTEGER;
+    }
+
+    private Token.Type scanCharacter() {
+        value.setLength(0);
         chars.advance();
-        if (!isAtEnd()) {
-            if (chars.get(0) == '\n') {
-                throw new ParseException("Invalid character", chars.index);
-            }
-            else if (chars.get(0) == '\r') {
-                throw new ParseException("Invalid character", chars.index);
-            }
-            else if (chars.get(0) == '\'') {
+        if (chars.has(0)) {
+            char c = chars.get(0);
+            if (c == '\n' || c == '\r' || c == '\'') {
                 throw new ParseException("Invalid character", chars.index);
             }
         }
-        if (!isAtEnd() && chars.get(0) == '\\') {
-
+        if (chars.has(0) && chars.get(0) == '\\') {
             chars.advance();
-            if (peek("b")) {
-                chars.advance();
+            if (!chars.has(0) || !isEscape(chars.get(0))) {
+                throw new ParseException("Invalid character", chars.index + 1);
             }
-            else if (peek("n")) {
-                chars.advance();
-            }
-            else if (peek("r")) {
-                chars.advance();
-            }
-            else if (peek("t")) {
-                chars.advance();
-            }
-            else if (peek("'")) {
-                chars.advance();
-            }
-            else if (peek("\"")) {
-                chars.advance();
-            }
-            else if (peek("\\\\")) {
-                chars.advance();
-            }
-            else {
-                throw new ParseException("Invalid character", chars.index+1);
-            }
-
+            value.append(unescape(chars.get(0)));
+            chars.advance();
         }
-
-        else if (!isAtEnd()) {
+        else if (chars.has(0)) {
+            value.append(chars.get(0));
             chars.advance();
         }
 
-        if (isAtEnd() || chars.get(0) != '\'') {
+        if (!chars.has(0) || chars.get(0) != '\'') {
             throw new ParseException("Unterminated character", chars.index);
         }
-
         else if (chars.get(-1) == '\'') {
-            throw new ParseException("Empty character", chars.index-1);
+            throw new ParseException("Empty character", chars.index - 1);
         }
 
         // The closing '.
         chars.advance();
-
-        // emit token
-        return chars.emit(Token.Type.CHARACTER);
+        return Token.Type.CHARACTER;
     }
 
     //https://www.craftinginterpreters.com/scanning.html
-    public Token lexString() {
+    private Token.Type scanString() {
+        value.setLength(0);
         chars.advance();
-        while (!isAtEnd() && !peek("\"")) {
-
-            if (chars.get(0) == '\n') {
-                lexEscape();
-            }
-            else if (chars.get(0) == '\r') {
-                lexEscape();
-            }
-            else if (chars.get(0) == '\"') {
+        while (chars.has(0) && chars.get(0) != '"') {
+            char c = chars.get(0);
+            if (c == '\n' || c == '\r') {
                 lexEscape();
             }
-            if (chars.get(0) == '\\') {
+            if (c == '\\') {
                 chars.advance();
-                if (!isAtEnd() && !peek("b") && !peek("n") && !peek("r") && !peek("t") && !peek("'") && !peek("\\\\") && !peek("\"")) {
-                    //throw new ParseException("Invalid escape", chars.index + 1);
+                if (chars.has(0) && !isEscape(chars.get(0))) {
                     lexEscape();
                 }
+                if (chars.has(0)) {
+                    c = unescape(chars.get(0));
+                }
             }
-
-            if (!isAtEnd()) {
+            if (chars.has(0)) {
+                value.append(c);
                 chars.advance();
             }
         }
 
-
         // The closing ".
-        if (!isAtEnd() && chars.get(0) == '"') {
+        if (chars.has(0) && chars.get(0) == '"') {
             chars.advance();
         }
         else {
-            //throw new ParseException("Unterminated string", chars.index);
             lexEscape();
         }
+        return Token.Type.STRING;
+    }
 
-        // emit token
-        return chars.emit(Token.Type.STRING);
+    private Token.Type scanOperator() {
+        char c = chars.get(0);
+        chars.advance();
+        if (is(c, COMPARISON) && chars.has(0) && chars.get(0) == '=') {
+            chars.advance();
+        }
+        return Token.Type.OPERATOR;
     }
 
-    public void lexEscape() {
-        //throw new UnsupportedOperationException(); //TODO
-        throw new ParseException("Invalid String",chars.index);
+    /**
+     * Returns true if there is a character at the given offset and it belongs
+     * to any of the given classes.
+     */
+    private boolean peek(int offset, int classes) {
+        return chars.has(offset) && is(chars.get(offset), classes);
     }
 
-    public Token lexOperator() {
-        if (match("[<]")) {
-            match("=");
-        }
-        else if (match("[>]")) {
-            match("=");
-        }
-        else if (match("[!]")) {
-            match("=");
-        }
-        else if (match("[=]")) {
-            match("=");
-        }
-        else {
-            chars.advance();
+    private static boolean is(char c, int classes) {
+        return c < CLASSES.length && (CLASSES[c] & classes) != 0;
+    }
+
+    private static boolean isEscape(char c) {
+        switch (c) {
+            case 'b':
+            case 'n':
+            case 'r':
+            case 't':
+            case '\'':
+            case '"':
+            case '\\':
+                return true;
+            default:
+                return false;
         }
-        return chars.emit(Token.Type.OPERATOR);
+    }
 
+    /**
+     * Returns the character a valid escape character (following a backslash)
+     * stands for.
+     */
+    private static char unescape(char c) {
+        switch (c) {
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            default: return c;
+        }
     }
 
     /**
-     * Returns true if the next sequence of characters match the given patterns,
-     * which should be a regex. For example, {@code peek("a", "b", "c")} would
-     * return true if the next characters are {@code 'a', 'b', 'c'}.
+     * Decodes the value of a string or character literal, for tokens which
+     * were not created by the lexer with their value. The literal is expected
+     * to be valid, but any other character following a backslash is kept.
      */
-    public boolean peek(String... patterns) {
-        for (int i = 0; i < patterns.length; i++) {
-            if (!chars.has(i) || !String.valueOf(chars.get(i)).matches(patterns[i])) {
-                return false;
+    static String decode(String literal) {
+        StringBuilder builder = new StringBuilder(literal.length());
+        for (int i = 1; i < literal.length() - 1; i++) {
+            char c = literal.charAt(i);
+            if (c == '\\' && i + 1 < literal.length() - 1) {
+                c = unescape(literal.charAt(++i));
             }
+            builder.append(c);
         }
-        return true;
+        return builder.toString();
     }
 
     /**
-     * Returns true in the same way as {@link #peek(String...)}, but also
-     * advances the character stream past all matched characters if peek returns
-     * true. Hint - it's easiest to have this method simply call peek.
+     * The result of {@link #relex}: the edited source and its tokens, of which
+     * the tokens from {@link #getStart()} to {@link #getNewEnd()} replace the
+     * old tokens from {@link #getStart()} to {@link #getOldEnd()}. Tokens
+     * before the changed range are the old tokens, and tokens after it are the
+     * old tokens moved by the change in length.
      */
-    public boolean match(String... patterns) {
-        boolean peek = peek(patterns);
+    public static final class Relexed {
+
+        private final String source;
+        private final List<Token> tokens;
+        private final int start;
+        private final int oldEnd;
+        private final int newEnd;
+
+        public Relexed(String source, List<Token> tokens, int start, int oldEnd, int newEnd) {
+            this.source = source;
+            this.tokens = tokens;
+            this.start = start;
+            this.oldEnd = oldEnd;
+            this.newEnd = newEnd;
+        }
 
-        if (peek) {
-            for (int i = 0; i < patterns.length; i++) {
-                chars.advance();
-            }
+        public String getSource() {
+            return source;
+        }
+
+        public List<Token> getTokens() {
+            return tokens;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getOldEnd() {
+            return oldEnd;
+        }
+
+        public int getNewEnd() {
+            return newEnd;
         }
-        return peek;
+
     }
 
     /**
-     * A helper class maintaining the input string, current index of the char
-     * stream, and the current length of the token being matched.
+     * A helper class maintaining the input characters, current index of the
+     * char stream, and the current length of the token being matched. The
+     * input may be any {@link CharSequence}, such as a String or a CharBuffer.
+     * The backing array of a CharBuffer is read directly, so its position must
+     * not change while it is being lexed.
      *
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
@@ -297,16 +718,37 @@ public final class Lexer {
      */
     public static final class CharStream {
 
-        private final String input;
-        private int index = 0;
+        private final CharSequence input;
+        private final char[] array;
+        private final int offset;
+        private final int end;
+        private int index;
         private int length = 0;
 
-        public CharStream(String input) {
+        public CharStream(CharSequence input) {
+            this(input, 0, input.length());
+        }
+
+        /**
+         * Creates a stream over the characters of {@code input} between {@code
+         * start} and {@code end}, with indices relative to the whole input.
+         */
+        public CharStream(CharSequence input, int start, int end) {
             this.input = input;
+            this.index = start;
+            this.end = end;
+            if (input instanceof CharBuffer && ((CharBuffer) input).hasArray()) {
+                CharBuffer buffer = (CharBuffer) input;
+                this.array = buffer.array();
+                this.offset = buffer.arrayOffset() + buffer.position();
+            } else {
+                this.array = null;
+                this.offset = 0;
+            }
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < end;
         }
 
         public char get(int offset) {
@@ -318,17 +760,35 @@ public final class Lexer {
             length++;
         }
 
+        public void advance(int count) {
+            index += count;
+            length += count;
+        }
+
         public void skip() {
             length = 0;
         }
 
+        /**
+         * Emits the current token as a range of the input, leaving its literal
+         * to be created on demand unless it is a keyword or operator.
+         */
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            return new Token(type, input, start, index - start);
+        }
+
+        /**
+         * Emits the current token as a range of the input with the decoded
+         * value of a string or character literal.
+         */
+        public Token emit(Token.Type type, String value) {
+            int start = index - length;
+            skip();
+            return new Token(type, input, start, index - start, value);
         }
 
     }
 
 }
-
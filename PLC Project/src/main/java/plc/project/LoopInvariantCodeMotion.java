@@ -0,0 +1,159 @@
+package plc.project;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Moves expressions whose value is the same on every iteration of a {@code
+ * WHILE} or {@code FOR} loop out of it, declaring a variable ({@code licm0},
+ * {@code licm1}, ...) holding the value before the loop and reading it in the
+ * loop's condition and statements instead. An expression used several times in
+ * the loop gets a single variable.
+ *
+ * An expression is invariant if it only reads local variables (as in {@link
+ * Effects}) which are neither assigned nor declared anywhere in the loop,
+ * including the variable of a {@code FOR} loop. Since a hoisted expression is
+ * evaluated even if the loop never runs, or if it was only evaluated in a
+ * branch of the loop, only binary expressions which can not fail are moved:
+ * those over literals and variables using operators other than {@code /}.
+ * Calls are left in the loop, as even a pure method may fail or not return.
+ *
+ * Loops are rewritten outermost first, so an expression invariant in nested
+ * loops is moved out of all of them at once.
+ */
+public final class LoopInvariantCodeMotion extends AstRewriter {
+
+    private Effects effects;
+    private Set<String> names = new HashSet<>();
+    private Set<String> locals = Collections.emptySet();
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        effects = Effects.of(ast);
+        names = getNames(ast);
+        return super.visit(ast);
+    }
+
+    @Override
+    public Ast.Method visit(Ast.Method ast) {
+        locals = effects != null ? effects.getLocals(ast) : Collections.<String>emptySet();
+        try {
+            return super.visit(ast);
+        } finally {
+            locals = Collections.emptySet();
+        }
+    }
+
+    @Override
+    protected void rewriteStatement(Ast.Stmt statement, List<Ast.Stmt> block) {
+        if (statement instanceof Ast.Stmt.While) {
+            Ast.Stmt.While stmt = (Ast.Stmt.While) statement;
+            Hoister hoister = new Hoister(getVariant(stmt.getStatements()));
+            Ast.Expr condition = hoister.rewrite(stmt.getCondition());
+            List<Ast.Stmt> statements = hoister.rewriteBlock(stmt.getStatements());
+            block.addAll(hoister.hoisted.values());
+            if (condition != stmt.getCondition() || statements != stmt.getStatements()) {
+                statement = new Ast.Stmt.While(condition, statements);
+            }
+        } else if (statement instanceof Ast.Stmt.For) {
+            Ast.Stmt.For stmt = (Ast.Stmt.For) statement;
+            Set<String> variant = getVariant(stmt.getStatements());
+            variant.add(stmt.getName());
+            Hoister hoister = new Hoister(variant);
+            List<Ast.Stmt> statements = hoister.rewriteBlock(stmt.getStatements());
+            block.addAll(hoister.hoisted.values());
+            if (statements != stmt.getStatements()) {
+                statement = new Ast.Stmt.For(stmt.getName(), stmt.getValue(), statements);
+            }
+        }
+        super.rewriteStatement(statement, block);
+    }
+
+    /**
+     * Replaces the invariant expressions of one loop with variables, keeping
+     * the declarations to add before it.
+     */
+    private final class Hoister extends AstRewriter {
+
+        private final Set<String> variant;
+        private final Map<String, Ast.Stmt.Declaration> hoisted = new LinkedHashMap<>();
+
+        private Hoister(Set<String> variant) {
+            this.variant = variant;
+        }
+
+        @Override
+        public Ast.Expr visit(Ast.Expr.Group ast) {
+            if (isInvariant(ast.getExpression())) {
+                return hoist(ast.getExpression());
+            }
+            return super.visit(ast);
+        }
+
+        @Override
+        public Ast.Expr visit(Ast.Expr.Binary ast) {
+            if (isInvariant(ast)) {
+                return hoist(ast);
+            }
+            return super.visit(ast);
+        }
+
+        private boolean isInvariant(Ast.Expr expr) {
+            return expr instanceof Ast.Expr.Binary && isTotal(expr);
+        }
+
+        /**
+         * Returns true if the expression is invariant and can not fail.
+         */
+        private boolean isTotal(Ast.Expr expr) {
+            if (expr instanceof Ast.Expr.Literal) {
+                return true;
+            } else if (expr instanceof Ast.Expr.Group) {
+                return isTotal(((Ast.Expr.Group) expr).getExpression());
+            } else if (expr instanceof Ast.Expr.Binary) {
+                Ast.Expr.Binary binary = (Ast.Expr.Binary) expr;
+                return !binary.getOperator().equals("/") && isTotal(binary.getLeft()) && isTotal(binary.getRight());
+            } else if (expr instanceof Ast.Expr.Access) {
+                Ast.Expr.Access access = (Ast.Expr.Access) expr;
+                return !access.getReceiver().isPresent() && locals.contains(access.getName())
+                        && !variant.contains(access.getName());
+            }
+            return false;
+        }
+
+        private Ast.Expr hoist(Ast.Expr expr) {
+            String key = CommonSubexpressionEliminator.key(expr);
+            Ast.Stmt.Declaration declaration = hoisted.get(key);
+            if (declaration == null) {
+                String name = fresh("licm", names);
+                declaration = new Ast.Stmt.Declaration(name, Optional.of(expr));
+                Environment.Type type = annotation(expr::getType);
+                declaration.setVariable(type != null ? new Environment.Variable(name, name, type, Environment.NIL) : null);
+                hoisted.put(key, declaration);
+            }
+            Ast.Expr.Access access = new Ast.Expr.Access(Optional.empty(), declaration.getName());
+            access.setVariable(annotation(declaration::getVariable));
+            return access;
+        }
+
+    }
+
+    /**
+     * Returns the names of the variables assigned or declared anywhere in the
+     * statements, which are not invariant in a loop running them.
+     */
+    private static Set<String> getVariant(List<Ast.Stmt> statements) {
+        Set<String> names = new HashSet<>();
+        Effects.addDeclarations(statements, names);
+        for (Ast.Stmt statement : statements) {
+            names.addAll(ConstantFolder.getAssignedNames(statement));
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,49 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs optimization passes over an analyzed source before it is given to the
+ * {@link Interpreter} or {@link Generator}. Since one pass can enable another
+ * (folding a condition lets a branch be removed, which may leave a variable
+ * constant), the passes are run in order repeatedly until a round changes
+ * nothing, up to {@link #MAX_ROUNDS} rounds.
+ */
+public final class Optimizer {
+
+    public static final int MAX_ROUNDS = 8;
+
+    private final List<AstRewriter> passes;
+
+    /**
+     * Creates an optimizer running the default passes.
+     */
+    public Optimizer() {
+        this(Arrays.asList(new Inliner(), new ConstantFolder(), new DeadCodeEliminator(), new CommonSubexpressionEliminator(),
+                new LoopInvariantCodeMotion()));
+    }
+
+    public Optimizer(List<AstRewriter> passes) {
+        this.passes = new ArrayList<>(passes);
+    }
+
+    public List<AstRewriter> getPasses() {
+        return passes;
+    }
+
+    public Ast.Source optimize(Ast.Source source) {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            Ast.Source previous = source;
+            for (AstRewriter pass : passes) {
+                source = pass.visit(source);
+            }
+            if (source == previous) {
+                break;
+            }
+        }
+        return source;
+    }
+
+}
@@ -1,9 +1,16 @@
 package plc.project;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 
@@ -19,13 +26,108 @@ import java.math.BigInteger;
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have it's own function, and reference to other rules correspond
  * to calling that functions.
+ *
+ * Tokens are pulled from the source on demand and only a small window of them
+ * is kept (see {@link TokenStream}), so a parser created from {@link
+ * Lexer#tokens()} parses in constant token memory. A parser created from a
+ * {@link TokenBuffer} reads the packed token arrays directly.
+ *
+ * Expressions can also be parsed by a table driven Pratt parser (see {@link
+ * #parsePrattExpression()}), which produces identical trees without a call
+ * for each precedence level and is enabled with {@link #setPratt(boolean)}.
+ *
+ * The methods of a source can be parsed in parallel with {@link
+ * #parseSourceParallel()}, as long as the parser was created from a list or
+ * {@link TokenBuffer} which can be read out of order. Such a parser can also
+ * defer parsing the body of each method until its statements are first used
+ * (see {@link #setLazy(boolean)}).
+ *
+ * Instead of stopping at the first error, {@link #parseSourceRecovering(List)}
+ * collects every error it can find in one pass.
  */
 public final class Parser {
 
+    /**
+     * The binding power of each binary operator, indexed by the ordinal of its
+     * {@link Token.Kind}, where a higher power binds tighter and 0 is not a
+     * binary operator. All binary operators are left associative.
+     */
+    private static final int[] BINDING_POWERS = new int[Token.Kind.values().length];
+
+    static {
+        BINDING_POWERS[Token.Kind.AND.ordinal()] = 1;
+        BINDING_POWERS[Token.Kind.OR.ordinal()] = 1;
+        for (Token.Kind kind : new Token.Kind[] {Token.Kind.LESS, Token.Kind.LESS_EQUAL, Token.Kind.GREATER,
+                Token.Kind.GREATER_EQUAL, Token.Kind.EQUAL, Token.Kind.NOT_EQUAL}) {
+            BINDING_POWERS[kind.ordinal()] = 2;
+        }
+        BINDING_POWERS[Token.Kind.PLUS.ordinal()] = 3;
+        BINDING_POWERS[Token.Kind.MINUS.ordinal()] = 3;
+        BINDING_POWERS[Token.Kind.TIMES.ordinal()] = 4;
+        BINDING_POWERS[Token.Kind.DIVIDE.ordinal()] = 4;
+    }
+
+    /**
+     * The approximate number of tokens of methods each task of {@link
+     * #parseSourceParallel()} parses.
+     */
+    private static final int BATCH_SIZE = 1 << 12;
+
     private final TokenStream tokens;
+    private boolean pratt = false;
+    private boolean lazy = false;
+    private AstFactory factory = AstFactory.UNSHARED;
+
+    /**
+     * The errors collected by {@link #parseSourceRecovering(List)}, or null if
+     * the parser is not recovering from errors.
+     */
+    private List<ParseException> errors = null;
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this.tokens = tokens instanceof RandomAccess ? new ListStream(tokens, 0) : new WindowStream(tokens.iterator());
+    }
+
+    public Parser(Iterator<Token> tokens) {
+        this.tokens = new WindowStream(tokens);
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this.tokens = new BufferStream(tokens);
+    }
+
+    /**
+     * Selects whether {@link #parseExpression()} uses the Pratt parser instead
+     * of descending through a method for each precedence level.
+     */
+    public void setPratt(boolean pratt) {
+        this.pratt = pratt;
+    }
+
+    /**
+     * Selects whether {@link #parseMethod()} defers parsing the statements of
+     * the method until {@link Ast.Method#getStatements()} is first called,
+     * which the {@link Analyzer}, {@link Interpreter} and {@link Generator}
+     * only do for the methods they use. The body is found by matching each
+     * {@code DO} with an {@code END}, and any {@link ParseException} in it is
+     * thrown by {@link Ast.Method#getStatements()} instead. Parsers created
+     * from an iterator cannot read the body later and always parse it.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Selects the factory creating the expressions, such as an {@link
+     * AstFactory} sharing equal expressions. The factory is only used by
+     * {@link #parseSource()} and for methods parsed by this parser; lazily
+     * parsed bodies and {@link #parseSourceRecovering(List)} do not share
+     * expressions, and each batch of {@link #parseSourceParallel()} shares
+     * them through a factory of its own. A factory should not be reused after
+     * a {@link ParseException}, which leaves its blocks open.
+     */
+    public void setFactory(AstFactory factory) {
+        this.factory = factory;
     }
 
     /**
@@ -34,12 +136,20 @@ public final class Parser {
     public Ast.Source parseSource() throws ParseException {
         List<Ast.Field> f = new ArrayList<Ast.Field>();
         List<Ast.Method> m = new ArrayList<Ast.Method>();
-        while (peek("LET")) {
+        while (peek(Token.Kind.LET)) {
             Ast.Field temp = parseField();
             f.add(temp);
         }
 
-        while (peek("DEF")) {
+        parseMethods(m);
+        return new Ast.Source(f, m);
+    }
+
+    /**
+     * Parses the methods of the source rule through to the end of the tokens.
+     */
+    private void parseMethods(List<Ast.Method> m) throws ParseException {
+        while (peek(Token.Kind.DEF)) {
             Ast.Method temp = parseMethod();
             m.add(temp);
         }
@@ -47,10 +157,234 @@ public final class Parser {
         if (tokens.has(0)) {
             throw new ParseException("Token after methods", tokens.index);
         }
+    }
 
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but instead
+     * of throwing the first {@link ParseException} adds every error found to
+     * {@code errors} and returns what could be parsed.
+     *
+     * After an error in a statement of a block, the tokens are skipped up to
+     * and including the next {@code ;}, or up to the next {@code END}, {@code
+     * DEF} or {@code LET}, and the block continues with the next statement; a
+     * block ends early at a {@code DEF} or the end of the tokens. After an
+     * error in a field or method itself, the tokens are skipped up to the next
+     * {@code DEF} (or {@code LET}, before any method) and the failed field or
+     * method is left out. Errors caused by an earlier one, such as a missing
+     * {@code END} reported for each enclosing block, may also be reported.
+     */
+    public Ast.Source parseSourceRecovering(List<ParseException> errors) {
+        AstFactory factory = this.factory;
+        this.errors = errors;
+        this.factory = AstFactory.UNSHARED;
+        try {
+            List<Ast.Field> f = new ArrayList<Ast.Field>();
+            List<Ast.Method> m = new ArrayList<Ast.Method>();
+            boolean methods = false;
+            while (tokens.has(0)) {
+                int start = tokens.index;
+                try {
+                    if (peek(Token.Kind.LET)) {
+                        if (methods) {
+                            errors.add(new ParseException("Token after methods", tokens.index));
+                        }
+                        f.add(parseField());
+                    } else if (peek(Token.Kind.DEF)) {
+                        methods = true;
+                        m.add(parseMethod());
+                    } else {
+                        throw new ParseException("Token after methods", tokens.index);
+                    }
+                } catch (ParseException e) {
+                    errors.add(e);
+                    while (tokens.has(0) && !peek(Token.Kind.DEF) && (methods || !peek(Token.Kind.LET))
+                            || tokens.index == start) {
+                        tokens.advance();
+                    }
+                }
+            }
+            return new Ast.Source(f, m);
+        } finally {
+            this.errors = null;
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * Parses a statement of a block into {@code statements}. When recovering,
+     * an error is collected and the tokens are skipped to the start of the
+     * next statement, always moving past at least one token.
+     */
+    private void parseBlockStatement(List<Ast.Stmt> statements) throws ParseException {
+        if (errors == null) {
+            statements.add(parseStatement());
+            return;
+        }
+        int start = tokens.index;
+        try {
+            statements.add(parseStatement());
+        } catch (ParseException e) {
+            errors.add(e);
+            while (tokens.has(0)) {
+                Token.Kind kind = tokens.getKind(0);
+                if (kind == Token.Kind.SEMICOLON) {
+                    tokens.advance();
+                    break;
+                } else if ((kind == Token.Kind.END || kind == Token.Kind.DEF || kind == Token.Kind.LET) && tokens.index != start) {
+                    break;
+                }
+                tokens.advance();
+            }
+        }
+    }
+
+    /**
+     * Returns true if a block should end at the current token because it is
+     * missing its {@code END}, which is only checked when recovering.
+     */
+    private boolean atBoundary() {
+        return errors != null && (!tokens.has(0) || peek(Token.Kind.DEF));
+    }
+
+    /**
+     * Parses the {@code source} rule with the methods parsed in parallel on
+     * the common {@link ForkJoinPool}, see {@link
+     * #parseSourceParallel(ForkJoinPool)}.
+     */
+    public Ast.Source parseSourceParallel() throws ParseException {
+        return parseSourceParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but parses
+     * the methods in batches of roughly {@link #BATCH_SIZE} tokens on the given
+     * pool.
+     *
+     * The fields are parsed first, after which the remaining tokens are
+     * scanned for the method boundaries: a method starts at a {@code DEF}
+     * outside of any block and ends at the {@code END} closing its {@code DO},
+     * where every {@code DO} opens a block and every {@code END} closes one.
+     * The parser has no state besides its position, so each batch is parsed
+     * by a parser of its own starting at the {@code DEF} of its first method
+     * and with the same token indices. If the scan finds something other than
+     * well nested methods, a method does not end where the scan expected, or
+     * parsing a batch fails, the methods are parsed sequentially instead so
+     * that the {@link ParseException} is the same as {@link #parseSource()}.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool) throws ParseException {
+        List<Ast.Field> f = new ArrayList<Ast.Field>();
+        while (peek(Token.Kind.LET)) {
+            f.add(parseField());
+        }
+        List<Integer> starts = scanMethods();
+        List<Callable<List<Ast.Method>>> tasks = new ArrayList<>();
+        if (starts != null) {
+            for (int i = 0; i < starts.size() - 1; ) {
+                int first = i;
+                do {
+                    i++;
+                } while (i < starts.size() - 1 && starts.get(i) - starts.get(first) < BATCH_SIZE);
+                List<Integer> batch = starts.subList(first, i + 1);
+                tasks.add(() -> parseBatch(batch));
+            }
+        }
+        List<Ast.Method> m = tasks.size() > 1 ? invokeBatches(pool, tasks) : null;
+        if (m == null) {
+            m = new ArrayList<Ast.Method>();
+            parseMethods(m);
+        } else {
+            tokens.index = starts.get(starts.size() - 1);
+        }
         return new Ast.Source(f, m);
     }
 
+    /**
+     * Scans the tokens after the current one for the start of each method,
+     * followed by the end of the tokens. Returns null if the tokens cannot be
+     * read out of order or are not a sequence of well nested methods.
+     */
+    private List<Integer> scanMethods() {
+        if (tokens.at(tokens.index) == null) {
+            return null;
+        }
+        List<Integer> starts = new ArrayList<>();
+        int depth = 0;
+        boolean header = false;
+        int offset = 0;
+        for (; tokens.has(offset); offset++) {
+            Token.Kind kind = tokens.getKind(offset);
+            if (depth == 0 && kind == Token.Kind.DEF) {
+                starts.add(tokens.index + offset);
+                header = true;
+            } else if (kind == Token.Kind.DO) {
+                depth++;
+                header = false;
+            } else if (kind == Token.Kind.END) {
+                depth--;
+                if (depth < 0) {
+                    return null;
+                }
+            } else if (depth == 0 && !header) {
+                return null;
+            }
+        }
+        if (depth != 0 || header) {
+            return null;
+        }
+        starts.add(tokens.index + offset);
+        return starts;
+    }
+
+    /**
+     * Parses the methods starting at each index of the batch but the last,
+     * which is the end of the last method. Returns null if a method does not
+     * end where the next one starts.
+     */
+    private List<Ast.Method> parseBatch(List<Integer> starts) throws ParseException {
+        Parser parser = new Parser(tokens.at(starts.get(0)));
+        parser.pratt = pratt;
+        parser.lazy = lazy;
+        parser.factory = factory == AstFactory.UNSHARED ? factory : new AstFactory();
+        List<Ast.Method> methods = new ArrayList<>(starts.size() - 1);
+        for (int i = 1; i < starts.size(); i++) {
+            methods.add(parser.parseMethod());
+            if (parser.tokens.index != starts.get(i)) {
+                return null;
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Runs the batches on the pool, returning their methods in order or null
+     * if any batch failed.
+     */
+    private static List<Ast.Method> invokeBatches(ForkJoinPool pool, List<Callable<List<Ast.Method>>> tasks) {
+        List<Ast.Method> methods = new ArrayList<>();
+        for (Future<List<Ast.Method>> result : pool.invokeAll(tasks)) {
+            try {
+                List<Ast.Method> batch = result.get();
+                if (batch == null) {
+                    return null;
+                }
+                methods.addAll(batch);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ParseException) {
+                    return null;
+                }
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        return methods;
+    }
+
+    private Parser(TokenStream tokens) {
+        this.tokens = tokens;
+    }
+
     /**
      * Parses the {@code field} rule. This method should only be called if the
      * next tokens start a field, aka {@code LET}.
@@ -69,48 +403,100 @@ public final class Parser {
     public Ast.Method parseMethod() throws ParseException {
         List<String> parameters = new ArrayList<String>();
         List<Ast.Stmt> statements = new ArrayList<Ast.Stmt>();
-        match("DEF");
+        match(Token.Kind.DEF);
 
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected identifier in method", tokens.index);
         }
 
-        String name = tokens.get(-1).getLiteral();
+        String name = tokens.getLiteral(-1);
 
-        if (!match("(")) {
+        if (!match(Token.Kind.LEFT_PAREN)) {
             throw new ParseException("Expected opening parenthesis in method", tokens.index);
         }
 
         if (match(Token.Type.IDENTIFIER)) {
-            parameters.add(tokens.get(-1).getLiteral());
+            parameters.add(tokens.getLiteral(-1));
 
-            while (match(",")) {
+            while (match(Token.Kind.COMMA)) {
                 if (!match(Token.Type.IDENTIFIER)) {
                     throw new ParseException("Expected parameter in method after comma", tokens.index);
                 }
-                parameters.add(tokens.get(-1).getLiteral());
+                parameters.add(tokens.getLiteral(-1));
             }
         }
 
-        if (!match(")")) {
+        if (!match(Token.Kind.RIGHT_PAREN)) {
             throw new ParseException("Expected closing parenthesis in method", tokens.index);
         }
 
-        if (!match("DO")) {
+        if (!match(Token.Kind.DO)) {
             throw new ParseException("Expected DO in method", tokens.index);
         }
 
-        while (!peek("END")) {
-            statements.add(parseStatement());
+        int end = lazy && errors == null ? scanBody() : -1;
+        if (end >= 0) {
+            Ast.Method method = new Ast.Method(name, parameters, parseBodyLater(tokens.index, end));
+            tokens.index = end + 1;
+            return method;
+        }
+
+        factory.enterScope();
+        for (String parameter : parameters) {
+            factory.declare(parameter);
+        }
+        while (!peek(Token.Kind.END) && !atBoundary()) {
+            parseBlockStatement(statements);
         }
+        factory.exitScope();
 
-        if (!match("END")) {
+        if (!match(Token.Kind.END)) {
             throw new ParseException("Expected END in method", tokens.index);
         }
 
         return new Ast.Method(name, parameters, statements);
     }
 
+    /**
+     * Returns the index of the {@code END} closing the body of a method which
+     * starts at the current token, or -1 if the tokens cannot be read out of
+     * order or the body is not closed.
+     */
+    private int scanBody() {
+        if (tokens.at(tokens.index) == null) {
+            return -1;
+        }
+        int depth = 0;
+        for (int offset = 0; tokens.has(offset); offset++) {
+            Token.Kind kind = tokens.getKind(offset);
+            if (kind == Token.Kind.DO) {
+                depth++;
+            } else if (kind == Token.Kind.END && depth-- == 0) {
+                return tokens.index + offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a supplier parsing the statements of a method body from {@code
+     * start}, which must end at the {@code END} at {@code end}.
+     */
+    private Supplier<List<Ast.Stmt>> parseBodyLater(int start, int end) {
+        return () -> {
+            Parser parser = new Parser(tokens.at(start));
+            parser.pratt = pratt;
+            List<Ast.Stmt> statements = new ArrayList<Ast.Stmt>();
+            while (!parser.peek(Token.Kind.END)) {
+                statements.add(parser.parseStatement());
+            }
+            if (parser.tokens.index != end) {
+                throw new ParseException("Expected END in method", parser.tokens.index);
+            }
+            return statements;
+        };
+    }
+
     /**
      * Parses the {@code statement} rule and delegates to the necessary method.
      * If the next tokens do not start a declaration, if, while, or return
@@ -119,46 +505,42 @@ public final class Parser {
     public Ast.Stmt parseStatement() throws ParseException {
         //throw new UnsupportedOperationException(); //TODO
         //'LET' identifier ('=' expression )? ';'
-        if (peek("LET")) {
-            return parseDeclarationStatement();
-        }
-        if (peek("IF")) {
-            return parseIfStatement();
-        }
-        if (peek("FOR")) {
-            return parseForStatement();
-        }
-        if (peek("WHILE")) {
-            return parseWhileStatement();
-        }
-        if (peek("RETURN")) {
-            return parseReturnStatement();
-        }
-
-        // expression ('=' expression)? '?'
-        else {
-            Ast.Expr expr = parseExpression();
+        switch (peekKind()) {
+            case LET:
+                return parseDeclarationStatement();
+            case IF:
+                return parseIfStatement();
+            case FOR:
+                return parseForStatement();
+            case WHILE:
+                return parseWhileStatement();
+            case RETURN:
+                return parseReturnStatement();
+
+            // expression ('=' expression)? '?'
+            default:
+                Ast.Expr expr = parseExpression();
+
+
+                //FIXME: handle if next token is =, then handle assignment
+                if (match(Token.Kind.ASSIGN)) {
+                    Ast.Expr expr2 = parseExpression();
+
+                    if (!match(Token.Kind.SEMICOLON)) {
+                        //FIXME: char index
+                        throw new ParseException("Expected semicolon after expr after equals sign", tokens.index);
+                    }
 
+                    return new Ast.Stmt.Assignment(expr, expr2);
+                }
 
-            //FIXME: handle if next token is =, then handle assignment
-            if (match("=")) {
-                Ast.Expr expr2 = parseExpression();
 
-                if (!match(";")) {
+                if (!match(Token.Kind.SEMICOLON)) {
                     //FIXME: char index
-                    throw new ParseException("Expected semicolon after expr after equals sign", tokens.index);
+                    throw new ParseException("Expected semicolon after expr" + expr.toString(), tokens.index);
                 }
 
-                return new Ast.Stmt.Assignment(expr, expr2);
-            }
-
-
-            if (!match(";")) {
-                //FIXME: char index
-                throw new ParseException("Expected semicolon after expr" + expr.toString(), tokens.index);
-            }
-
-            return new Ast.Stmt.Expression(expr);
+                return new Ast.Stmt.Expression(expr);
         }
 
     }
@@ -171,7 +553,7 @@ public final class Parser {
     public Ast.Stmt.Declaration parseDeclarationStatement() throws ParseException {
         //throw new UnsupportedOperationException(); //TODO
         //'LET' identifier ('=' expression )? ';'
-        match("LET");
+        match(Token.Kind.LET);
 
         if (!match(Token.Type.IDENTIFIER)) {
             //FIXME: char index
@@ -179,20 +561,21 @@ public final class Parser {
         }
 
         //get variable name
-        String name = tokens.get(-1).getLiteral();
+        String name = tokens.getLiteral(-1);
 
         Optional<Ast.Expr> value = Optional.empty();
 
         //
-        if (match("=")) {
+        if (match(Token.Kind.ASSIGN)) {
             value = Optional.of(parseExpression());
         }
 
-        if (!match(";")) {
+        if (!match(Token.Kind.SEMICOLON)) {
             //FIXME: char index
             throw new ParseException("Expected semicolon", tokens.index);
         }
 
+        factory.declare(name);
         return new Ast.Stmt.Declaration(name, value);
 
     }
@@ -204,32 +587,36 @@ public final class Parser {
      */
     public Ast.Stmt.If parseIfStatement() throws ParseException {
         //throw new UnsupportedOperationException(); //TODO
-        match("IF");
+        match(Token.Kind.IF);
         Ast.Expr expr1 = parseExpression();
 
         List<Ast.Stmt> DO_Statements = new ArrayList<>();
         List<Ast.Stmt> ELSE_Statements = new ArrayList<>();
 
-        if (match("DO")) {
-            while (!peek("ELSE") && !peek("END"))
-                DO_Statements.add(parseStatement());
-
-            if (match("ELSE")) {
-                while (!peek("END"))
-                    ELSE_Statements.add(parseStatement());
+        if (match(Token.Kind.DO)) {
+            factory.enterScope();
+            while (!peek(Token.Kind.ELSE) && !peek(Token.Kind.END) && !atBoundary())
+                parseBlockStatement(DO_Statements);
+            factory.exitScope();
+
+            if (match(Token.Kind.ELSE)) {
+                factory.enterScope();
+                while (!peek(Token.Kind.END) && !atBoundary())
+                    parseBlockStatement(ELSE_Statements);
+                factory.exitScope();
             }
         }
 
         else {
             if (tokens.has(0)) {
-                throw new ParseException("Expected DO, Received different statement" + tokens.get(0).getIndex(), tokens.get(0).getIndex());
+                throw new ParseException("Expected DO, Received different statement" + tokens.getIndex(0), tokens.getIndex(0));
             }
             else {
-                throw new ParseException("Missing DO" + tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length(), tokens.index);
+                throw new ParseException("Missing DO" + tokens.getIndex(-1) + tokens.getLength(-1), tokens.index);
             }
         }
 
-        if (match ("END")) {
+        if (match(Token.Kind.END)) {
             return new Ast.Stmt.If(expr1,DO_Statements,ELSE_Statements);
         }
 
@@ -245,49 +632,52 @@ public final class Parser {
      */
     public Ast.Stmt.For parseForStatement() throws ParseException {
         //throw new UnsupportedOperationException(); //TODO
-        match("FOR");
+        match(Token.Kind.FOR);
         String word = "";
 
         // Get identifier
         if (match(Token.Type.IDENTIFIER)) {
-            word = tokens.get(-1).getLiteral();
+            word = tokens.getLiteral(-1);
         }
         else {
             throw new ParseException("No identifier after FOR",tokens.index);
         }
 
-        if (!match("IN")) {
+        if (!match(Token.Kind.IN)) {
             throw new ParseException("Expected IN", tokens.index);
         }
         else {
-            match("IN");
+            match(Token.Kind.IN);
         }
 
         Ast.Expr expr1 = parseExpression();
 
-        if (!match("DO")) {
+        if (!match(Token.Kind.DO)) {
             if (tokens.has(0)) {
-                throw new ParseException("Expected DO, Received different statement", tokens.get(0).getIndex());
+                throw new ParseException("Expected DO, Received different statement", tokens.getIndex(0));
             }
             else {
-                throw new ParseException("Expected DO", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                throw new ParseException("Expected DO", tokens.getIndex(-1) + tokens.getLength(-1));
             }
         }
         else {
-            match("DO");
+            match(Token.Kind.DO);
         }
 
         List<Ast.Stmt> DO_Statements = new ArrayList<Ast.Stmt>();
 
-        while (!peek("END")) {
-            DO_Statements.add(parseStatement());
+        factory.enterScope();
+        factory.declare(word);
+        while (!peek(Token.Kind.END) && !atBoundary()) {
+            parseBlockStatement(DO_Statements);
         }
+        factory.exitScope();
 
-        if (!match("END")) {
+        if (!match(Token.Kind.END)) {
             throw new ParseException("Expected END at the end", tokens.index);
         }
         else {
-            match("END");
+            match(Token.Kind.END);
             return new Ast.Stmt.For(word, expr1, DO_Statements);
         }
 
@@ -300,32 +690,34 @@ public final class Parser {
      */
     public Ast.Stmt.While parseWhileStatement() throws ParseException {
         //throw new UnsupportedOperationException(); //TODO
-        match("WHILE");
+        match(Token.Kind.WHILE);
 
         Ast.Expr expr1 = parseExpression();
 
-        if (!match("DO")) {
+        if (!match(Token.Kind.DO)) {
             if (tokens.has(0)) {
-                throw new ParseException("Expected DO, Received different statement", tokens.get(0).getIndex());
+                throw new ParseException("Expected DO, Received different statement", tokens.getIndex(0));
             }
             else {
-                throw new ParseException("Expected DO", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                throw new ParseException("Expected DO", tokens.getIndex(-1) + tokens.getLength(-1));
             }
         }
         else {
-            match("DO");
+            match(Token.Kind.DO);
         }
 
         List<Ast.Stmt> DO_Statements = new ArrayList<Ast.Stmt>();
 
-        while (!peek("END"))
-            DO_Statements.add(parseStatement());
+        factory.enterScope();
+        while (!peek(Token.Kind.END) && !atBoundary())
+            parseBlockStatement(DO_Statements);
+        factory.exitScope();
 
-        if (!match("END")) {
+        if (!match(Token.Kind.END)) {
             throw new ParseException("Expected END", tokens.index);
         }
         else {
-            match("DO");
+            match(Token.Kind.DO);
             return new Ast.Stmt.While(expr1, DO_Statements);
         }
     }
@@ -338,15 +730,15 @@ public final class Parser {
      */
     public Ast.Stmt.Return parseReturnStatement() throws ParseException {
         //throw new UnsupportedOperationException(); //TODO
-        match("RETURN");
+        match(Token.Kind.RETURN);
 
         Ast.Expr expr1 = parseExpression();
 
-        if (!match(";")) {
+        if (!match(Token.Kind.SEMICOLON)) {
             throw new ParseException("Expected a semicolon", tokens.index);
         }
         else {
-            match(";");
+            match(Token.Kind.SEMICOLON);
             return new Ast.Stmt.Return(expr1);
         }
     }
@@ -356,7 +748,34 @@ public final class Parser {
      * Parses the {@code expression} rule.
      */
     public Ast.Expr parseExpression() throws ParseException {
-        return parseLogicalExpression();
+        return pratt ? parsePrattExpression() : parseLogicalExpression();
+    }
+
+    /**
+     * Parses the {@code expression} rule with a Pratt parser, producing the
+     * same tree as {@link #parseLogicalExpression()}. Precedence comes from
+     * {@link #BINDING_POWERS} instead of the call stack, so each operand takes
+     * one call to {@link #parseSecondaryExpression()} plus one call here per
+     * operator.
+     */
+    public Ast.Expr parsePrattExpression() throws ParseException {
+        return parsePrattExpression(0);
+    }
+
+    /**
+     * Parses an expression whose binary operators all bind tighter than the
+     * given power. Since every operator is left associative, the right operand
+     * of an operator only takes operators binding tighter than itself.
+     */
+    private Ast.Expr parsePrattExpression(int power) throws ParseException {
+        Ast.Expr left = parseSecondaryExpression();
+        while (BINDING_POWERS[peekKind().ordinal()] > power) {
+            int operatorPower = BINDING_POWERS[tokens.getKind(0).ordinal()];
+            String operator = tokens.getLiteral(0);
+            tokens.advance();
+            left = factory.binary(operator, left, parsePrattExpression(operatorPower));
+        }
+        return left;
     }
 
     /**
@@ -367,10 +786,11 @@ public final class Parser {
 
         String word = "";
 
-        while (match("AND") || match("OR")) {
-            word = tokens.get(-1).getLiteral();
+        while (isLogical(peekKind())) {
+            word = tokens.getLiteral(0);
+            tokens.advance();
             Ast.Expr expr2 = parseEqualityExpression();
-            expr1 = new Ast.Expr.Binary(word, expr1, expr2);
+            expr1 = factory.binary(word, expr1, expr2);
         }
         return expr1;
 
@@ -385,10 +805,11 @@ public final class Parser {
 
         String word = "";
 
-        while (match("<") || match("<=") || match(">") || match(">=") || match("==") || match("!=")) {
-            word = tokens.get(-1).getLiteral();
+        while (isComparison(peekKind())) {
+            word = tokens.getLiteral(0);
+            tokens.advance();
             Ast.Expr expr2 = parseAdditiveExpression();
-            expr1 = new Ast.Expr.Binary(word,expr1, expr2);
+            expr1 = factory.binary(word,expr1, expr2);
         }
         return expr1;
 
@@ -403,10 +824,11 @@ public final class Parser {
 
         String word = "";
 
-        while (match("+") || match("-")) {
-            word = tokens.get(-1).getLiteral();
+        while (isAdditive(peekKind())) {
+            word = tokens.getLiteral(0);
+            tokens.advance();
             Ast.Expr expr2 = parseMultiplicativeExpression();
-            expr1 = new Ast.Expr.Binary(word,expr1,expr2);
+            expr1 = factory.binary(word,expr1,expr2);
         }
         return expr1;
 
@@ -421,10 +843,11 @@ public final class Parser {
 
         String word = "";
 
-        while (match("*") || match("/")) {
-            word = tokens.get(-1).getLiteral();
+        while (isMultiplicative(peekKind())) {
+            word = tokens.getLiteral(0);
+            tokens.advance();
             Ast.Expr expr2 = parseSecondaryExpression();
-            expr1 = new Ast.Expr.Binary(word,expr1,expr2);
+            expr1 = factory.binary(word,expr1,expr2);
         }
 
         return expr1;
@@ -438,7 +861,7 @@ public final class Parser {
         Ast.Expr expr1 = parsePrimaryExpression();
         List<Ast.Expr> list = new ArrayList<>();
         //If it doesnt match on a period then it goes on to be a primary expression
-        if (!match(".")) {
+        if (!match(Token.Kind.DOT)) {
             return expr1;
         }
 
@@ -446,19 +869,19 @@ public final class Parser {
             throw new ParseException("Expected identifier after period in secondary expression", tokens.index);
         }
 
-        String name = tokens.get(0).getLiteral();
+        String name = tokens.getLiteral(0);
         tokens.advance();
 
-        if (!match("(")) {
-            return new Ast.Expr.Access(Optional.of(expr1), name);
+        if (!match(Token.Kind.LEFT_PAREN)) {
+            return factory.access(Optional.of(expr1), name);
         }
 
-        if (!match(")")) {
+        if (!match(Token.Kind.RIGHT_PAREN)) {
             list.add(parseExpression());
         }
 
         Ast.Expr value;
-        value = new Ast.Expr.Function(Optional.of(expr1), name, list);
+        value = factory.function(Optional.of(expr1), name, list);
         return value;
     }
 
@@ -469,98 +892,66 @@ public final class Parser {
      * not strictly necessary.
      */
     public Ast.Expr parsePrimaryExpression() throws ParseException {
-        if (match("TRUE")) {
-            return new Ast.Expr.Literal(true);
-        }
-
-        else if (match("FALSE")) {
-            return new Ast.Expr.Literal(false);
-        }
-
-        else if (match("NIL")) {
-            return new Ast.Expr.Literal(null);
-        }
-
-        else if (match(Token.Type.INTEGER)) {
-            String name = tokens.get(-1).getLiteral();
-            return new Ast.Expr.Literal(new BigInteger(name));
-        }
-
-        else if (match(Token.Type.DECIMAL)) {
-            String name = tokens.get(-1).getLiteral();
-            return new Ast.Expr.Literal(new BigDecimal(name));
-        }
-
-        else if (match(Token.Type.CHARACTER)) {
-            String name = tokens.get(-1).getLiteral();
-            switch (name) {
-                case "'\b'":
-                    return new Ast.Expr.Literal('\b');
-
-                case "'\n'":
-                    return new Ast.Expr.Literal('\n');
-
-                case "'\r'":
-                    return new Ast.Expr.Literal('\r');
-
-                case "'\t'":
-                    return new Ast.Expr.Literal('\t');
-
-                case "\'":
-                    return new Ast.Expr.Literal('\'');
-
-                case "'\"'":
-                    return new Ast.Expr.Literal('\"');
-
-                case "'\'":
-                    return new Ast.Expr.Literal('\\');
-
-                default:
-                    return new Ast.Expr.Literal(name.charAt(1));
-            }
+        switch (peekKind()) {
+            case TRUE:
+                tokens.advance();
+                return factory.literal(true);
+            case FALSE:
+                tokens.advance();
+                return factory.literal(false);
+            case NIL:
+                tokens.advance();
+                return factory.literal(null);
+            case INTEGER:
+                tokens.advance();
+                return factory.literal(new BigInteger(tokens.getLiteral(-1)));
+            case DECIMAL:
+                tokens.advance();
+                return factory.literal(new BigDecimal(tokens.getLiteral(-1)));
+            case CHARACTER:
+                tokens.advance();
+                return factory.literal(tokens.getValue(-1).charAt(0));
+            case STRING:
+                tokens.advance();
+                return factory.literal(tokens.getValue(-1));
+            default:
+                break;
         }
-        else if (match(Token.Type.STRING)) {
-            String name = tokens.get(-1).getLiteral();
-            name = name.replaceAll("\"","");
-            name = name.replaceAll("\\\\b", "\b");
-            name = name.replaceAll("\\\\n", "\n");
-            name = name.replaceAll("\\\\r", "\r");
-            name = name.replaceAll("\\\\t", "\t");
-            return new Ast.Expr.Literal(name);
 
-        }
-        else if (peek(Token.Type.IDENTIFIER)) {
-            String name = tokens.get(0).getLiteral();
-            if (match(Token.Type.IDENTIFIER, "(")) {
+        if (peek(Token.Type.IDENTIFIER)) {
+            String name = tokens.getLiteral(0);
+            if (tokens.has(1) && tokens.getKind(1) == Token.Kind.LEFT_PAREN) {
+                tokens.advance();
+                tokens.advance();
                 List<Ast.Expr> list = new ArrayList<>();
-                if(!match(")")) {
+                if(!match(Token.Kind.RIGHT_PAREN)) {
                     list.add(parseExpression());
-                    while (tokens.has(0) && !peek(")")) {
-                        if(!match(",")){
+                    while (tokens.has(0) && !peek(Token.Kind.RIGHT_PAREN)) {
+                        if(!match(Token.Kind.COMMA)){
                             throw new ParseException("No comma between arguments", tokens.index);
                         }
                         list.add(parseExpression());
                     }
-                    if (!match(")")) {
+                    if (!match(Token.Kind.RIGHT_PAREN)) {
                         throw new ParseException("No closing parenthesis in function call", tokens.index);
                     }
                 }
 
-                return new Ast.Expr.Function(Optional.empty(), name, list);
+                return factory.function(Optional.empty(), name, list);
             }
 
             else {
                 tokens.advance();
-                return new Ast.Expr.Access(Optional.empty(), name);
+                return factory.access(Optional.empty(), name);
             }
         }
 
-        else if(match("(")) {
+        else if (match(Token.Kind.LEFT_PAREN)) {
             Ast.Expr expr = parseExpression();
-            if (!match(")")) {
-                throw new ParseException("Expected closing parentheses ", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+            if (!match(Token.Kind.RIGHT_PAREN)) {
+                throw new ParseException("Expected closing parentheses ", tokens.getIndex(-1) + tokens.getLength(-1));
             }
-            return new Ast.Expr.Group(expr);
+            return factory.group(expr);
         }
 
         else {
@@ -569,12 +960,85 @@ public final class Parser {
     }
 
 
+    private static boolean isLogical(Token.Kind kind) {
+        return kind == Token.Kind.AND || kind == Token.Kind.OR;
+    }
+
+    private static boolean isComparison(Token.Kind kind) {
+        switch (kind) {
+            case LESS:
+            case LESS_EQUAL:
+            case GREATER:
+            case GREATER_EQUAL:
+            case EQUAL:
+            case NOT_EQUAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isAdditive(Token.Kind kind) {
+        return kind == Token.Kind.PLUS || kind == Token.Kind.MINUS;
+    }
+
+    private static boolean isMultiplicative(Token.Kind kind) {
+        return kind == Token.Kind.TIMES || kind == Token.Kind.DIVIDE;
+    }
+
+    /**
+     * Returns the kind of the next token, which the lexer resolved once so the
+     * parser can switch on it instead of comparing literals. Past the last
+     * token this is the generic {@link Token.Kind#OPERATOR}, which no rule
+     * dispatches on.
+     */
+    private Token.Kind peekKind() {
+        return tokens.has(0) ? tokens.getKind(0) : Token.Kind.OPERATOR;
+    }
+
+    /**
+     * Returns {@code true} if the next token is of the given kind, the common
+     * case of {@link #peek(Object...)}.
+     */
+    private boolean peek(Token.Kind kind) {
+        return peekKind() == kind;
+    }
+
+    /**
+     * Returns {@code true} if {@link #peek(Token.Kind)} is true and advances
+     * the token stream.
+     */
+    private boolean match(Token.Kind kind) {
+        boolean peek = peek(kind);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * Returns {@code true} if the next token is of the given type, without the
+     * array allocated for {@link #peek(Object...)}.
+     */
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.getType(0) == type;
+    }
+
+    private boolean match(Token.Type type) {
+        boolean peek = peek(type);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
     /**
      * As in the lexer, returns {@code true} if the current sequence of tokens
      * matches the given patterns. Unlike the lexer, the pattern is not a regex;
      * instead it is either a {@link Token.Type}, which matches if the token's
-     * type is the same, or a {@link String}, which matches if the token's
-     * literal is the same.
+     * type is the same, a {@link Token.Kind}, which matches if the token's kind
+     * is the same, or a {@link String}, which matches if the token's literal is
+     * the same.
      *
      * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
      * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
@@ -584,11 +1048,15 @@ public final class Parser {
             if(!tokens.has(i)) {
                 return false;
             }else if(patterns[i] instanceof Token.Type) {
-                if(patterns[i] != tokens.get(i).getType()){
+                if(patterns[i] != tokens.getType(i)){
+                    return false;
+                }
+            }else if(patterns[i] instanceof Token.Kind) {
+                if(patterns[i] != tokens.getKind(i)){
                     return false;
                 }
             }else if (patterns[i] instanceof String){
-                if(!patterns[i].equals((tokens.get(i).getLiteral()))){
+                if(!tokens.matches(i, (String) patterns[i])){
                     return false;
                 }
             }else {
@@ -613,28 +1081,43 @@ public final class Parser {
     }
 
 
-    private static final class TokenStream {
-
-        private final List<Token> tokens;
-        private int index = 0;
+    /**
+     * The tokens being parsed, accessed relative to the current token. The
+     * accessors mirror the getters of {@link Token} so that sources which do
+     * not store {@link Token} objects can be parsed directly.
+     */
+    private static abstract class TokenStream {
 
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
-        }
+        protected int index = 0;
 
         /**
          * Returns true if there is a token at index + offset.
          */
-        public boolean has(int offset) {
-            return index + offset < tokens.size();
+        public abstract boolean has(int offset);
+
+        public Token.Type getType(int offset) {
+            return getKind(offset).getType();
         }
 
+        public abstract Token.Kind getKind(int offset);
+
+        public abstract String getLiteral(int offset);
+
         /**
-         * Gets the token at index + offset.
+         * Returns the decoded value of the string or character token at index
+         * + offset.
          */
-        public Token get(int offset) {
-            return tokens.get(index + offset);
-        }
+        public abstract String getValue(int offset);
+
+        public abstract int getIndex(int offset);
+
+        public abstract int getLength(int offset);
+
+        /**
+         * Returns true if the literal of the token at index + offset is exactly
+         * the given literal.
+         */
+        public abstract boolean matches(int offset, String literal);
 
         /**
          * Advances to the next token, incrementing the index.
@@ -643,6 +1126,205 @@ public final class Parser {
             index++;
         }
 
+        /**
+         * Returns a new stream over the same tokens starting at the given
+         * index, or null if the tokens cannot be read out of order.
+         */
+        public abstract TokenStream at(int index);
+
+    }
+
+    /**
+     * A window over a token iterator holding the previous token and a few
+     * tokens of lookahead, which is all the parser ever looks at. Tokens are
+     * pulled from the source as the lookahead requires them, and {@link #index}
+     * remains the absolute index of the current token.
+     */
+    private static final class WindowStream extends TokenStream {
+
+        private static final int WINDOW = 4;
+
+        private final Iterator<Token> source;
+        private final Token[] window = new Token[WINDOW];
+        private int size = 0;
+
+        private WindowStream(Iterator<Token> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return fill(index + offset);
+        }
+
+        @Override
+        public Token.Kind getKind(int offset) {
+            return get(offset).getKind();
+        }
+
+        @Override
+        public String getLiteral(int offset) {
+            return get(offset).getLiteral();
+        }
+
+        @Override
+        public String getValue(int offset) {
+            return get(offset).getValue();
+        }
+
+        @Override
+        public int getIndex(int offset) {
+            return get(offset).getIndex();
+        }
+
+        @Override
+        public int getLength(int offset) {
+            return get(offset).getLength();
+        }
+
+        @Override
+        public boolean matches(int offset, String literal) {
+            return get(offset).getLiteral().equals(literal);
+        }
+
+        @Override
+        public TokenStream at(int index) {
+            return null;
+        }
+
+        /**
+         * Gets the token at index + offset, which must still be in the window.
+         */
+        private Token get(int offset) {
+            int position = index + offset;
+            if (position < 0 || !fill(position) || position < size - WINDOW) {
+                throw new IndexOutOfBoundsException("Token " + position + " is outside of the window ending at " + size + ".");
+            }
+            return window[position % WINDOW];
+        }
+
+        /**
+         * Pulls tokens from the source until the given position is in the
+         * window, returning false if the source runs out first.
+         */
+        private boolean fill(int position) {
+            while (size <= position && source.hasNext()) {
+                window[size % WINDOW] = source.next();
+                size++;
+            }
+            return position < size;
+        }
+
+    }
+
+    /**
+     * Reads a random access list of tokens, which may be read out of order.
+     */
+    private static final class ListStream extends TokenStream {
+
+        private final List<Token> tokens;
+
+        private ListStream(List<Token> tokens, int index) {
+            this.tokens = tokens;
+            this.index = index;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < tokens.size();
+        }
+
+        @Override
+        public Token.Kind getKind(int offset) {
+            return tokens.get(index + offset).getKind();
+        }
+
+        @Override
+        public String getLiteral(int offset) {
+            return tokens.get(index + offset).getLiteral();
+        }
+
+        @Override
+        public String getValue(int offset) {
+            return tokens.get(index + offset).getValue();
+        }
+
+        @Override
+        public int getIndex(int offset) {
+            return tokens.get(index + offset).getIndex();
+        }
+
+        @Override
+        public int getLength(int offset) {
+            return tokens.get(index + offset).getLength();
+        }
+
+        @Override
+        public boolean matches(int offset, String literal) {
+            return tokens.get(index + offset).getLiteral().equals(literal);
+        }
+
+        @Override
+        public TokenStream at(int index) {
+            return new ListStream(tokens, index);
+        }
+
+    }
+
+    /**
+     * Reads the packed arrays of a {@link TokenBuffer}, only creating literals
+     * for the tokens the parser keeps (such as names and numbers).
+     */
+    private static final class BufferStream extends TokenStream {
+
+        private final TokenBuffer buffer;
+
+        private BufferStream(TokenBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < buffer.size();
+        }
+
+        @Override
+        public Token.Kind getKind(int offset) {
+            return buffer.getKind(index + offset);
+        }
+
+        @Override
+        public String getLiteral(int offset) {
+            return buffer.getLiteral(index + offset);
+        }
+
+        @Override
+        public String getValue(int offset) {
+            return buffer.getValue(index + offset);
+        }
+
+        @Override
+        public int getIndex(int offset) {
+            return buffer.getIndex(index + offset);
+        }
+
+        @Override
+        public int getLength(int offset) {
+            return buffer.getLength(index + offset);
+        }
+
+        @Override
+        public boolean matches(int offset, String literal) {
+            return buffer.matches(index + offset, literal);
+        }
+
+        @Override
+        public TokenStream at(int index) {
+            BufferStream stream = new BufferStream(buffer);
+            stream.index = index;
+            return stream;
+        }
+
     }
 
 }
@@ -0,0 +1,214 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Puts a function in static single assignment form, replacing each {@link
+ * Ir.Load} of a local variable with the value stored last along every path to
+ * it and removing the {@link Ir.Store}s, following Cytron et al.
+ *
+ * A phi for a variable is placed at each block in the iterated dominance
+ * frontier of the blocks storing it, which are the blocks where different
+ * stores may meet. The blocks are then walked down the dominator tree keeping
+ * the current value of each variable, which is what loads are replaced with
+ * and what each successor's phis receive from the block. Afterwards, phis no
+ * instruction uses (such as those for variables declared in a loop, which are
+ * merged at the loop's header although they are never read there) are
+ * removed, as are phis merging a single value besides themselves.
+ */
+public final class SsaBuilder implements Ir.Pass {
+
+    private final Map<Ir.Variable, Deque<Ir.Value>> values = new HashMap<>();
+    private final Map<Ir.Value, Ir.Value> replacements = new HashMap<>();
+    private Dominators dominators;
+
+    @Override
+    public void run(Ir.Function function) {
+        function.removeUnreachableBlocks();
+        dominators = Dominators.of(function);
+        insertPhis(function);
+        rename(function.getEntry());
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getAll()) {
+                resolve(instruction);
+            }
+        }
+        removeDeadPhis(function);
+        removeTrivialPhis(function);
+        values.clear();
+        replacements.clear();
+    }
+
+    private void insertPhis(Ir.Function function) {
+        Map<Ir.Variable, Set<Ir.Block>> stores = new LinkedHashMap<>();
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                if (instruction instanceof Ir.Store) {
+                    Ir.Variable variable = ((Ir.Store) instruction).getVariable();
+                    if (!stores.containsKey(variable)) {
+                        stores.put(variable, new HashSet<>());
+                    }
+                    stores.get(variable).add(block);
+                }
+            }
+        }
+        for (Map.Entry<Ir.Variable, Set<Ir.Block>> entry : stores.entrySet()) {
+            Set<Ir.Block> placed = new HashSet<>();
+            Deque<Ir.Block> worklist = new ArrayDeque<>(entry.getValue());
+            while (!worklist.isEmpty()) {
+                for (Ir.Block frontier : dominators.getFrontier(worklist.pop())) {
+                    if (placed.add(frontier)) {
+                        Ir.Phi phi = new Ir.Phi(entry.getKey());
+                        for (Ir.Block predecessor : frontier.getPredecessors()) {
+                            phi.setIncoming(predecessor, Ir.Constant.UNDEFINED);
+                        }
+                        frontier.getPhis().add(phi);
+                        if (!entry.getValue().contains(frontier)) {
+                            worklist.push(frontier);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Renames the variables of the block and the blocks it dominates, with
+     * the current values of the variables on entry.
+     */
+    private void rename(Ir.Block block) {
+        List<Ir.Variable> defined = new ArrayList<>();
+        for (Ir.Phi phi : block.getPhis()) {
+            if (phi.getVariable() != null) {
+                define(phi.getVariable(), phi, defined);
+            }
+        }
+        for (Iterator<Ir.Instruction> iterator = block.getInstructions().iterator(); iterator.hasNext(); ) {
+            Ir.Instruction instruction = iterator.next();
+            resolve(instruction);
+            if (instruction instanceof Ir.Load) {
+                replacements.put(instruction, current(((Ir.Load) instruction).getVariable()));
+                iterator.remove();
+            } else if (instruction instanceof Ir.Store) {
+                define(((Ir.Store) instruction).getVariable(), ((Ir.Store) instruction).getValue(), defined);
+                iterator.remove();
+            }
+        }
+        resolve(block.getTerminator());
+        for (Ir.Block successor : block.getSuccessors()) {
+            for (Ir.Phi phi : successor.getPhis()) {
+                if (phi.getVariable() != null) {
+                    phi.setIncoming(block, current(phi.getVariable()));
+                }
+            }
+        }
+        for (Ir.Block child : dominators.getChildren(block)) {
+            rename(child);
+        }
+        for (Ir.Variable variable : defined) {
+            values.get(variable).pop();
+        }
+    }
+
+    private void define(Ir.Variable variable, Ir.Value value, List<Ir.Variable> defined) {
+        if (!values.containsKey(variable)) {
+            values.put(variable, new ArrayDeque<>());
+        }
+        values.get(variable).push(value);
+        defined.add(variable);
+    }
+
+    private Ir.Value current(Ir.Variable variable) {
+        Deque<Ir.Value> stack = values.get(variable);
+        return stack != null && !stack.isEmpty() ? stack.peek() : Ir.Constant.UNDEFINED;
+    }
+
+    /**
+     * Replaces the operands of the instruction which were removed loads with
+     * their values.
+     */
+    private void resolve(Ir.Instruction instruction) {
+        List<Ir.Value> operands = instruction.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            Ir.Value replacement = replacements.get(operands.get(i));
+            if (replacement != null) {
+                instruction.setOperand(i, replacement);
+            }
+        }
+    }
+
+    /**
+     * Removes the phis which are not used by any instruction other than phis
+     * being removed.
+     */
+    private static void removeDeadPhis(Ir.Function function) {
+        Set<Ir.Phi> live = new HashSet<>();
+        Deque<Ir.Phi> worklist = new ArrayDeque<>();
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getAll()) {
+                if (!(instruction instanceof Ir.Phi)) {
+                    markPhis(instruction, live, worklist);
+                }
+            }
+        }
+        while (!worklist.isEmpty()) {
+            markPhis(worklist.pop(), live, worklist);
+        }
+        for (Ir.Block block : function.getBlocks()) {
+            block.getPhis().retainAll(live);
+        }
+    }
+
+    private static void markPhis(Ir.Instruction instruction, Set<Ir.Phi> live, Deque<Ir.Phi> worklist) {
+        for (Ir.Value operand : instruction.getOperands()) {
+            if (operand instanceof Ir.Phi && live.add((Ir.Phi) operand)) {
+                worklist.push((Ir.Phi) operand);
+            }
+        }
+    }
+
+    /**
+     * Replaces phis whose operands are all the same value, or the phi itself,
+     * with that value until there are none left.
+     */
+    private static void removeTrivialPhis(Ir.Function function) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Ir.Block block : function.getBlocks()) {
+                for (Iterator<Ir.Phi> iterator = block.getPhis().iterator(); iterator.hasNext(); ) {
+                    Ir.Phi phi = iterator.next();
+                    Ir.Value value = getUniqueOperand(phi);
+                    if (value != null) {
+                        iterator.remove();
+                        function.replaceAllUses(phi, value);
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static Ir.Value getUniqueOperand(Ir.Phi phi) {
+        Ir.Value unique = null;
+        for (Ir.Value operand : phi.getOperands()) {
+            if (operand != phi && operand != unique) {
+                if (unique != null) {
+                    return null;
+                }
+                unique = operand;
+            }
+        }
+        return unique;
+    }
+
+}
@@ -1,5 +1,22 @@
 package plc.project;
 
+import java.util.Arrays;
+
+/**
+ * A token is a range of the source with a type. Tokens created by the {@link
+ * Lexer} keep a reference to the shared source instead of their own copy of
+ * the literal, which is only materialized when {@link #getLiteral()} is first
+ * called.
+ *
+ * Each token also has a {@link Kind}, which is resolved once when the token is
+ * created. Keywords and the operators of the grammar have their own kind with
+ * a shared literal, so they never need to be materialized and the parser can
+ * switch on the kind instead of comparing literals.
+ *
+ * String and character tokens also carry their value, the contents between
+ * the quotes with escapes decoded, which the lexer builds while scanning the
+ * literal so the parser does not have to decode it again.
+ */
 public final class Token {
 
     public enum Type {
@@ -11,39 +28,246 @@ public final class Token {
         OPERATOR
     }
 
-    private final Type type;
-    private final String literal;
+    /**
+     * The kind of a token, which is either one of the keywords or operators of
+     * the grammar or, for any other token, the kind named after its type.
+     */
+    public enum Kind {
+        IDENTIFIER(Type.IDENTIFIER, null),
+        INTEGER(Type.INTEGER, null),
+        DECIMAL(Type.DECIMAL, null),
+        CHARACTER(Type.CHARACTER, null),
+        STRING(Type.STRING, null),
+        OPERATOR(Type.OPERATOR, null),
+
+        AND(Type.IDENTIFIER, "AND"),
+        DEF(Type.IDENTIFIER, "DEF"),
+        DO(Type.IDENTIFIER, "DO"),
+        ELSE(Type.IDENTIFIER, "ELSE"),
+        END(Type.IDENTIFIER, "END"),
+        FALSE(Type.IDENTIFIER, "FALSE"),
+        FOR(Type.IDENTIFIER, "FOR"),
+        IF(Type.IDENTIFIER, "IF"),
+        IN(Type.IDENTIFIER, "IN"),
+        LET(Type.IDENTIFIER, "LET"),
+        NIL(Type.IDENTIFIER, "NIL"),
+        OR(Type.IDENTIFIER, "OR"),
+        RETURN(Type.IDENTIFIER, "RETURN"),
+        TRUE(Type.IDENTIFIER, "TRUE"),
+        WHILE(Type.IDENTIFIER, "WHILE"),
+
+        LEFT_PAREN(Type.OPERATOR, "("),
+        RIGHT_PAREN(Type.OPERATOR, ")"),
+        COMMA(Type.OPERATOR, ","),
+        DOT(Type.OPERATOR, "."),
+        COLON(Type.OPERATOR, ":"),
+        SEMICOLON(Type.OPERATOR, ";"),
+        ASSIGN(Type.OPERATOR, "="),
+        PLUS(Type.OPERATOR, "+"),
+        MINUS(Type.OPERATOR, "-"),
+        TIMES(Type.OPERATOR, "*"),
+        DIVIDE(Type.OPERATOR, "/"),
+        LESS(Type.OPERATOR, "<"),
+        LESS_EQUAL(Type.OPERATOR, "<="),
+        GREATER(Type.OPERATOR, ">"),
+        GREATER_EQUAL(Type.OPERATOR, ">="),
+        EQUAL(Type.OPERATOR, "=="),
+        NOT_EQUAL(Type.OPERATOR, "!=");
+
+        /**
+         * The generic kind of each type, the keywords grouped by their first
+         * letter, and the single character and two character ({@code <=} and
+         * so on) operators indexed by their first char code.
+         */
+        private static final Kind[] TYPES = new Kind[Type.values().length];
+        private static final Kind[][] KEYWORDS = new Kind[26][0];
+        private static final Kind[] OPERATORS = new Kind[128];
+        private static final Kind[] COMPARISONS = new Kind[128];
+
+        static {
+            for (Kind kind : values()) {
+                if (kind.literal == null) {
+                    TYPES[kind.type.ordinal()] = kind;
+                } else if (kind.type == Type.IDENTIFIER) {
+                    int letter = kind.literal.charAt(0) - 'A';
+                    KEYWORDS[letter] = Arrays.copyOf(KEYWORDS[letter], KEYWORDS[letter].length + 1);
+                    KEYWORDS[letter][KEYWORDS[letter].length - 1] = kind;
+                } else if (kind.literal.length() == 1) {
+                    OPERATORS[kind.literal.charAt(0)] = kind;
+                } else {
+                    COMPARISONS[kind.literal.charAt(0)] = kind;
+                }
+            }
+        }
+
+        private final Type type;
+        private final String literal;
+
+        Kind(Type type, String literal) {
+            this.type = type;
+            this.literal = literal;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Returns the shared literal of a keyword or operator, or null for the
+         * generic kinds.
+         */
+        public String getLiteral() {
+            return literal;
+        }
+
+        /**
+         * Returns the kind of a token of the given type for the {@code length}
+         * characters of {@code source} starting at {@code index}, without
+         * creating a String for them.
+         */
+        public static Kind of(Type type, CharSequence source, int index, int length) {
+            if (length > 0) {
+                char first = source.charAt(index);
+                if (type == Type.IDENTIFIER && first >= 'A' && first <= 'Z') {
+                    for (Kind keyword : KEYWORDS[first - 'A']) {
+                        if (keyword.matches(source, index, length)) {
+                            return keyword;
+                        }
+                    }
+                } else if (type == Type.OPERATOR && first < OPERATORS.length) {
+                    Kind kind = length == 1 ? OPERATORS[first]
+                            : length == 2 && source.charAt(index + 1) == '=' ? COMPARISONS[first] : null;
+                    if (kind != null) {
+                        return kind;
+                    }
+                }
+            }
+            return TYPES[type.ordinal()];
+        }
+
+        private boolean matches(CharSequence source, int index, int length) {
+            if (literal.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (source.charAt(index + i) != literal.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    private final Kind kind;
+    private final CharSequence source;
     private final int index;
+    private final int length;
+    private String literal;
+    private String value;
 
     public Token(Type type, String literal, int index) {
-        this.type = type;
+        this.kind = Kind.of(type, literal, 0, literal.length());
+        this.source = null;
+        this.index = index;
+        this.length = literal.length();
         this.literal = literal;
+    }
+
+    /**
+     * Creates a token for the {@code length} characters of {@code source}
+     * starting at {@code index}, which is also the index of the token.
+     * Keywords and operators are given the shared literal of their kind.
+     */
+    public Token(Type type, CharSequence source, int index, int length) {
+        this(type, source, index, length, null);
+    }
+
+    /**
+     * Creates a token for a range of {@code source} as above, with the decoded
+     * value of a string or character literal.
+     */
+    public Token(Type type, CharSequence source, int index, int length, String value) {
+        this.kind = Kind.of(type, source, index, length);
+        this.source = source;
+        this.index = index;
+        this.length = length;
+        this.literal = kind.getLiteral();
+        this.value = value;
+    }
+
+    private Token(Kind kind, CharSequence source, int index, int length, String literal, String value) {
+        this.kind = kind;
+        this.source = source;
         this.index = index;
+        this.length = length;
+        this.literal = literal;
+        this.value = value;
+    }
+
+    /**
+     * Returns a token for the same characters at {@code index} of {@code
+     * source}, keeping the kind and whatever literal and value were already
+     * created. Used by {@link Lexer#relex} to move tokens after an edit.
+     */
+    Token moveTo(CharSequence source, int index) {
+        return new Token(kind, source, index, length, literal, value);
     }
 
     public Type getType() {
-        return type;
+        return kind.getType();
+    }
+
+    public Kind getKind() {
+        return kind;
     }
 
+    /**
+     * Returns the literal, creating it from the source the first time. Racing
+     * threads may each create an equal copy, which is harmless.
+     */
     public String getLiteral() {
+        String literal = this.literal;
+        if (literal == null) {
+            literal = source.subSequence(index, index + length).toString();
+            this.literal = literal;
+        }
         return literal;
     }
 
+    /**
+     * Returns the value of a string or character token, decoding it from the
+     * literal if the token was not created with one, or null for any other
+     * type of token.
+     */
+    public String getValue() {
+        String value = this.value;
+        if (value == null && (getType() == Type.STRING || getType() == Type.CHARACTER)) {
+            value = Lexer.decode(getLiteral());
+            this.value = value;
+        }
+        return value;
+    }
+
     public int getIndex() {
         return index;
     }
 
+    public int getLength() {
+        return length;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
-                && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
-                && index == ((Token) obj).index;
+                && getType() == ((Token) obj).getType()
+                && index == ((Token) obj).index
+                && getLiteral().equals(((Token) obj).getLiteral());
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return getType() + "=" + getLiteral() + "@" + index;
     }
 
 }
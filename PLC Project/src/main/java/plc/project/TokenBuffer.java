@@ -0,0 +1,154 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * A packed list of tokens over a shared source, created by {@link
+ * Lexer#lexBuffer()}. Instead of a {@link Token} object per token, the kind,
+ * index and length of each token are stored in parallel primitive arrays,
+ * which take 9 bytes per token and are scanned sequentially by the {@link
+ * Parser}. The decoded values of string and character literals are kept in
+ * another array, which is only allocated for chunks containing them.
+ *
+ * The arrays are split into fixed size chunks so that growing the buffer only
+ * allocates a new chunk instead of copying everything lexed so far.
+ */
+public final class TokenBuffer {
+
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final Token.Kind[] KINDS = Token.Kind.values();
+
+    private final CharSequence source;
+    private byte[][] kinds = new byte[1][];
+    private int[][] indices = new int[1][];
+    private int[][] lengths = new int[1][];
+    private String[][] values = new String[1][];
+    private int size = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this.source = source;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a token of the given type for the {@code length} characters of
+     * the source starting at {@code index}, classifying its {@link
+     * Token.Kind}.
+     */
+    public void add(Token.Type type, int index, int length) {
+        add(type, index, length, null);
+    }
+
+    /**
+     * Appends a token as above, with the decoded value of a string or
+     * character literal. Chunks without any values do not allocate space for
+     * them.
+     */
+    public void add(Token.Type type, int index, int length, String value) {
+        int chunk = size >>> CHUNK_SHIFT;
+        if (chunk == kinds.length) {
+            kinds = Arrays.copyOf(kinds, chunk * 2);
+            indices = Arrays.copyOf(indices, chunk * 2);
+            lengths = Arrays.copyOf(lengths, chunk * 2);
+            values = Arrays.copyOf(values, chunk * 2);
+        }
+        if (kinds[chunk] == null) {
+            kinds[chunk] = new byte[CHUNK_SIZE];
+            indices[chunk] = new int[CHUNK_SIZE];
+            lengths[chunk] = new int[CHUNK_SIZE];
+        }
+        kinds[chunk][size & CHUNK_MASK] = (byte) Token.Kind.of(type, source, index, length).ordinal();
+        indices[chunk][size & CHUNK_MASK] = index;
+        lengths[chunk][size & CHUNK_MASK] = length;
+        if (value != null) {
+            if (values[chunk] == null) {
+                values[chunk] = new String[CHUNK_SIZE];
+            }
+            values[chunk][size & CHUNK_MASK] = value;
+        }
+        size++;
+    }
+
+    public Token.Type getType(int i) {
+        return getKind(i).getType();
+    }
+
+    public Token.Kind getKind(int i) {
+        checkIndex(i);
+        return KINDS[kinds[i >>> CHUNK_SHIFT][i & CHUNK_MASK]];
+    }
+
+    public int getIndex(int i) {
+        checkIndex(i);
+        return indices[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+    }
+
+    public int getLength(int i) {
+        checkIndex(i);
+        return lengths[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the shared literal of a keyword or operator, otherwise creating
+     * the literal of the token from the source.
+     */
+    public String getLiteral(int i) {
+        String literal = getKind(i).getLiteral();
+        if (literal != null) {
+            return literal;
+        }
+        int index = getIndex(i);
+        return source.subSequence(index, index + getLength(i)).toString();
+    }
+
+    /**
+     * Returns the decoded value of a string or character token, or null for
+     * any other token.
+     */
+    public String getValue(int i) {
+        checkIndex(i);
+        String[] chunk = values[i >>> CHUNK_SHIFT];
+        return chunk != null ? chunk[i & CHUNK_MASK] : null;
+    }
+
+    /**
+     * Returns true if the literal of the token is exactly the given literal,
+     * comparing against the source without creating the token's literal.
+     */
+    public boolean matches(int i, String literal) {
+        int index = getIndex(i);
+        if (getLength(i) != literal.length()) {
+            return false;
+        }
+        for (int j = 0; j < literal.length(); j++) {
+            if (source.charAt(index + j) != literal.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the token as a {@link Token} object, which refers to the source
+     * for its literal.
+     */
+    public Token get(int i) {
+        return new Token(getType(i), source, getIndex(i), getLength(i), getValue(i));
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Token " + i + " is outside of the buffer of size " + size + ".");
+        }
+    }
+
+}
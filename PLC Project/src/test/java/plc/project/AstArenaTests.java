@@ -0,0 +1,71 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class AstArenaTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRoundTrip(String test, String input) {
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(source, AstArena.of(source).toAst());
+    }
+
+    private static Stream<Arguments> testRoundTrip() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Fields", "LET x;\nLET y = 1.5;\nLET z = NIL;"),
+                Arguments.of("Statements", "DEF main(a, b) DO\n    LET s = \"a\\tb\";\n    a = b;\n    IF a < b DO\n        print('c');\n    ELSE\n        RETURN TRUE;\n    END\n    WHILE a != 0 DO\n        a = a - 1;\n    END\nEND"),
+                Arguments.of("Expressions", "DEF f() DO\n    RETURN (a + b) * obj.field / g(1, x.h()) AND FALSE OR -1;\nEND")
+        );
+    }
+
+    @Test
+    void testConstructed() {
+        Ast.Source source = new Ast.Source(
+                Arrays.asList(new Ast.Field("x", "Integer", Optional.of(new Ast.Expr.Literal(BigInteger.ONE)))),
+                Arrays.asList(new Ast.Method("f", Arrays.asList("a"), Arrays.asList("Decimal"), Optional.empty(), Arrays.asList(
+                        new Ast.Stmt.Declaration("y", Optional.of("String"), Optional.empty()),
+                        new Ast.Stmt.For("e", new Ast.Expr.Access(Optional.empty(), "list"), Arrays.asList(
+                                new Ast.Stmt.Expression(new Ast.Expr.Function(Optional.of(new Ast.Expr.Access(Optional.empty(), "e")), "m",
+                                        Arrays.asList(new Ast.Expr.Literal('c'), new Ast.Expr.Literal(null))))
+                        ))
+                )))
+        );
+        Assertions.assertEquals(source, AstArena.of(source).toAst());
+    }
+
+    @Test
+    void testView() {
+        Ast.Source source = new Parser(new Lexer("LET x = 1;\nDEF main() DO\n    print(x + 2.0, x + 1);\nEND").lex()).parseSource();
+        AstArena arena = AstArena.of(source);
+        int root = arena.getRoot();
+        Assertions.assertEquals(AstArena.SOURCE, arena.getKind(root));
+        Assertions.assertEquals(1, arena.getFieldCount(root));
+        Assertions.assertEquals("x", arena.getName(arena.getField(root, 0)));
+        int method = arena.getMethod(root, 0);
+        Assertions.assertEquals("main", arena.getName(method));
+        Assertions.assertEquals(0, arena.getParameterCount(method));
+        int function = arena.getExpression(arena.getStatement(method, 0));
+        Assertions.assertEquals(AstArena.FUNCTION, arena.getKind(function));
+        Assertions.assertEquals(AstArena.NONE, arena.getReceiver(function));
+        Assertions.assertEquals(2, arena.getArgumentCount(function));
+        int binary = arena.getArgument(function, 0);
+        Assertions.assertEquals("+", arena.getOperator(binary));
+        Assertions.assertEquals(new BigDecimal("2.0"), arena.getLiteral(arena.getRight(binary)));
+        Assertions.assertSame(arena.getName(arena.getLeft(binary)), arena.getName(arena.getLeft(arena.getArgument(function, 1))));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> arena.getOperator(function));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> arena.getArgument(function, 2));
+    }
+
+}
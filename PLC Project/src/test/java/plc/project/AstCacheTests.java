@@ -0,0 +1,102 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class AstCacheTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testEncoding(String test, Ast.Source source) {
+        AstArena arena = AstArena.of(source);
+        byte[] hash = AstCache.hash(new byte[0]);
+        AstArena decoded = AstCache.decode(ByteBuffer.wrap(AstCache.encode(hash, arena).array()), hash);
+        Assertions.assertNotNull(decoded);
+        Assertions.assertEquals(source, decoded.toAst());
+    }
+
+    private static Stream<Arguments> testEncoding() {
+        return Stream.of(
+                Arguments.of("Empty", new Ast.Source(Arrays.asList(), Arrays.asList())),
+                Arguments.of("Literals", new Ast.Source(
+                        Arrays.asList(
+                                field("string", new Ast.Expr.Literal("\u00e9\u4e2d\n")),
+                                field("character", new Ast.Expr.Literal('\u4e2d')),
+                                field("integer", new Ast.Expr.Literal(new BigInteger("-123456789012345678901234567890"))),
+                                field("decimal", new Ast.Expr.Literal(new BigDecimal("-1.500"))),
+                                field("boolean", new Ast.Expr.Literal(Boolean.FALSE)),
+                                field("nil", new Ast.Expr.Literal(null))
+                        ),
+                        Arrays.asList()
+                )),
+                Arguments.of("Method", new Ast.Source(
+                        Arrays.asList(),
+                        Arrays.asList(new Ast.Method("f", Arrays.asList("x"), Arrays.asList("Integer"), Optional.of("Integer"), Arrays.asList(
+                                new Ast.Stmt.Return(new Ast.Expr.Binary("*",
+                                        new Ast.Expr.Access(Optional.empty(), "x"),
+                                        new Ast.Expr.Function(Optional.empty(), "f", Arrays.asList(new Ast.Expr.Literal(BigInteger.ONE)))
+                                ))
+                        )))
+                ))
+        );
+    }
+
+    private static Ast.Field field(String name, Ast.Expr.Literal value) {
+        return new Ast.Field(name, "Any", Optional.of(value));
+    }
+
+    @Test
+    void testLoad(@TempDir Path directory) throws IOException {
+        Path source = directory.resolve("main.plc");
+        Files.write(source, "LET x = 1;\nDEF main() DO\n    print(x);\nEND".getBytes(StandardCharsets.UTF_8));
+        Ast.Source expected = AstCache.load(source);
+        Path cache = AstCache.getCachePath(source);
+        Assertions.assertTrue(Files.isRegularFile(cache));
+        byte[] hash = AstCache.hash(Files.readAllBytes(source));
+        Assertions.assertEquals(expected, AstCache.read(cache, hash).get().toAst());
+        Assertions.assertEquals(expected, AstCache.load(source));
+    }
+
+    @Test
+    void testStale(@TempDir Path directory) throws IOException {
+        Path source = directory.resolve("main.plc");
+        Files.write(source, "LET x = 1;".getBytes(StandardCharsets.UTF_8));
+        AstCache.load(source);
+        byte[] stale = AstCache.hash(Files.readAllBytes(source));
+        Files.write(source, "LET y = 2;".getBytes(StandardCharsets.UTF_8));
+        Path cache = AstCache.getCachePath(source);
+        Assertions.assertFalse(AstCache.read(cache, AstCache.hash(Files.readAllBytes(source))).isPresent());
+        Ast.Source expected = new Parser(new Lexer("LET y = 2;").lex()).parseSource();
+        Assertions.assertEquals(expected, AstCache.load(source));
+        Assertions.assertFalse(AstCache.read(cache, stale).isPresent());
+    }
+
+    @Test
+    void testCorrupt(@TempDir Path directory) throws IOException {
+        Path source = directory.resolve("main.plc");
+        Files.write(source, "LET x = 1;\nLET y = x;".getBytes(StandardCharsets.UTF_8));
+        Ast.Source expected = AstCache.load(source);
+        Path cache = AstCache.getCachePath(source);
+        byte[] bytes = Files.readAllBytes(cache);
+        Files.write(cache, Arrays.copyOf(bytes, bytes.length - 3));
+        Assertions.assertFalse(AstCache.read(cache, AstCache.hash(Files.readAllBytes(source))).isPresent());
+        Assertions.assertEquals(expected, AstCache.load(source));
+        Assertions.assertArrayEquals(bytes, Files.readAllBytes(cache));
+    }
+
+}
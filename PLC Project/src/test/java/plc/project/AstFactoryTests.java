@@ -0,0 +1,95 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class AstFactoryTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSharing(String test, Ast.Expr first, Ast.Expr second, boolean shared) {
+        Assertions.assertEquals(shared, first == second);
+    }
+
+    private static Stream<Arguments> testSharing() {
+        AstFactory factory = new AstFactory();
+        Ast.Expr.Access x = factory.access(Optional.empty(), "x");
+        return Stream.of(
+                Arguments.of("Integer", factory.literal(BigInteger.ONE), factory.literal(new BigInteger("1")), true),
+                Arguments.of("Decimal Scale", factory.literal(new BigDecimal("1.0")), factory.literal(new BigDecimal("1.00")), false),
+                Arguments.of("Character String", factory.literal('c'), factory.literal("c"), false),
+                Arguments.of("Nil", factory.literal(null), factory.literal(null), true),
+                Arguments.of("Binary",
+                        factory.binary("+", x, factory.literal(BigInteger.ONE)),
+                        factory.binary("+", factory.access(Optional.empty(), "x"), factory.literal(BigInteger.ONE)),
+                        true
+                ),
+                Arguments.of("Operator",
+                        factory.binary("+", x, x),
+                        factory.binary("*", x, x),
+                        false
+                ),
+                Arguments.of("Receiver",
+                        factory.access(Optional.of(x), "y"),
+                        factory.access(Optional.empty(), "y"),
+                        false
+                ),
+                Arguments.of("Function",
+                        factory.function(Optional.empty(), "f", Arrays.asList(x, factory.group(x))),
+                        factory.function(Optional.empty(), "f", Arrays.asList(x, factory.group(x))),
+                        true
+                ),
+                Arguments.of("Arguments",
+                        factory.function(Optional.empty(), "f", Arrays.asList(x)),
+                        factory.function(Optional.empty(), "f", Arrays.asList(x, x)),
+                        false
+                )
+        );
+    }
+
+    @Test
+    void testParser() {
+        String input = "LET x = 1 + 2;\nDEF main() DO\n    print(x * (1 + 2));\n    print(x * (1 + 2));\nEND";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Parser parser = new Parser(new Lexer(input).lex());
+        AstFactory factory = new AstFactory();
+        parser.setFactory(factory);
+        Ast.Source source = parser.parseSource();
+        Assertions.assertEquals(expected, source);
+        List<Ast.Stmt> statements = source.getMethods().get(0).getStatements();
+        Ast.Expr.Function first = (Ast.Expr.Function) ((Ast.Stmt.Expression) statements.get(0)).getExpression();
+        Ast.Expr.Function second = (Ast.Expr.Function) ((Ast.Stmt.Expression) statements.get(1)).getExpression();
+        Assertions.assertSame(first, second);
+        Ast.Expr.Binary product = (Ast.Expr.Binary) first.getArguments().get(0);
+        Assertions.assertSame(source.getFields().get(0).getValue().get(), ((Ast.Expr.Group) product.getRight()).getExpression());
+        Assertions.assertEquals(17, factory.getRequests());
+        Assertions.assertEquals(7, factory.size());
+    }
+
+    @Test
+    void testShadowing() {
+        String input = "LET x = 1;\nDEF main(y) DO\n    f(x, y);\n    IF TRUE DO\n        LET x = 2;\n        f(x, y);\n    END\n    f(x, y);\nEND";
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setFactory(new AstFactory());
+        Ast.Source source = parser.parseSource();
+        List<Ast.Stmt> statements = source.getMethods().get(0).getStatements();
+        Ast.Expr before = ((Ast.Stmt.Expression) statements.get(0)).getExpression();
+        Ast.Expr inside = ((Ast.Stmt.Expression) ((Ast.Stmt.If) statements.get(1)).getThenStatements().get(1)).getExpression();
+        Ast.Expr after = ((Ast.Stmt.Expression) statements.get(2)).getExpression();
+        Assertions.assertEquals(before, inside);
+        Assertions.assertNotSame(before, inside);
+        Assertions.assertSame(before, after);
+        Assertions.assertSame(((Ast.Expr.Function) before).getArguments().get(1), ((Ast.Expr.Function) inside).getArguments().get(1));
+    }
+
+}
@@ -394,6 +394,70 @@ final class InterpreterTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testTailCall(String test, Ast.Source ast, Object expected) {
+        test(ast, expected, new Scope(null));
+    }
+
+    private static Stream<Arguments> testTailCall() {
+        return Stream.of(
+                Arguments.of("Self Recursion", new Ast.Source(
+                        Arrays.asList(),
+                        Arrays.asList(
+                                countdown("count", "count", new Ast.Expr.Literal("done")),
+                                new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                                        new Ast.Stmt.Return(call("count", new Ast.Expr.Literal(BigInteger.valueOf(50000))))
+                                ))
+                        )
+                ), "done"),
+                Arguments.of("Mutual Recursion", new Ast.Source(
+                        Arrays.asList(),
+                        Arrays.asList(
+                                countdown("even", "odd", new Ast.Expr.Literal(Boolean.TRUE)),
+                                countdown("odd", "even", new Ast.Expr.Literal(Boolean.FALSE)),
+                                new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                                        new Ast.Stmt.Return(call("even", new Ast.Expr.Literal(BigInteger.valueOf(50001))))
+                                ))
+                        )
+                ), false),
+                Arguments.of("Caller Scope", new Ast.Source(
+                        Arrays.asList(),
+                        Arrays.asList(
+                                new Ast.Method("f", Arrays.asList(), Arrays.asList(
+                                        new Ast.Stmt.If(new Ast.Expr.Literal(Boolean.TRUE),
+                                                Arrays.asList(new Ast.Stmt.Return(new Ast.Expr.Literal(BigInteger.TEN))),
+                                                Arrays.asList()
+                                        )
+                                )),
+                                new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                                        new Ast.Stmt.Declaration("x", Optional.of(new Ast.Expr.Literal(BigInteger.ONE))),
+                                        new Ast.Stmt.Declaration("y", Optional.of(call("f"))),
+                                        new Ast.Stmt.Return(new Ast.Expr.Access(Optional.empty(), "x"))
+                                ))
+                        )
+                ), BigInteger.ONE)
+        );
+    }
+
+    /**
+     * Returns {@code DEF name(n) DO IF n > 0 DO RETURN next(n - 1); ELSE
+     * RETURN base; END END}, whose recursive call is a tail call.
+     */
+    private static Ast.Method countdown(String name, String next, Ast.Expr base) {
+        Ast.Expr n = new Ast.Expr.Access(Optional.empty(), "n");
+        return new Ast.Method(name, Arrays.asList("n"), Arrays.asList(
+                new Ast.Stmt.If(new Ast.Expr.Binary(">", n, new Ast.Expr.Literal(BigInteger.ZERO)),
+                        Arrays.asList(new Ast.Stmt.Return(call(next, new Ast.Expr.Binary("-", n, new Ast.Expr.Literal(BigInteger.ONE))))),
+                        Arrays.asList(new Ast.Stmt.Return(base))
+                )
+        ));
+    }
+
+    private static Ast.Expr.Function call(String name, Ast.Expr... arguments) {
+        return new Ast.Expr.Function(Optional.empty(), name, Arrays.asList(arguments));
+    }
+
     private static Scope test(Ast ast, Object expected, Scope scope) {
         Interpreter interpreter = new Interpreter(scope);
         if (expected != null) {
@@ -0,0 +1,249 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class IrTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testLowering(String test, String input, String expected) {
+        Assertions.assertEquals(expected, IrPrinter.print(IrLowering.lower(parse(input))));
+    }
+
+    private static Stream<Arguments> testLowering() {
+        return Stream.of(
+                Arguments.of("If",
+                        "DEF f(n) DO\n    LET x = 0;\n    IF n > 0 DO\n        x = n;\n    END\n    RETURN x;\nEND",
+                        lines(
+                                "f(n) {",
+                                "b0:",
+                                "    store n, n",
+                                "    store x, 0",
+                                "    %0 = load n",
+                                "    %1 = %0 > 0",
+                                "    branch %1, b1, b2",
+                                "b1: ; preds b0",
+                                "    %2 = load n",
+                                "    store x, %2",
+                                "    jump b2",
+                                "b2: ; preds b0, b1",
+                                "    %3 = load x",
+                                "    return %3",
+                                "}"
+                        )
+                ),
+                Arguments.of("Globals and Fields",
+                        "DEF f() DO\n    g = obj.x;\n    obj.y = \"a\\n\";\nEND",
+                        lines(
+                                "f() {",
+                                "b0:",
+                                "    %0 = load @obj",
+                                "    %1 = %0.x",
+                                "    store @g, %1",
+                                "    %2 = load @obj",
+                                "    %2.y = \"a\\n\"",
+                                "    return NIL",
+                                "}"
+                        )
+                ),
+                Arguments.of("Unreachable",
+                        "DEF f() DO\n    RETURN 1;\n    print(2);\nEND",
+                        lines(
+                                "f() {",
+                                "b0:",
+                                "    return 1",
+                                "}"
+                        )
+                ),
+                Arguments.of("Shadowing",
+                        "DEF f(x) DO\n    IF x DO\n        LET x = 1;\n        print(x);\n    END\nEND",
+                        lines(
+                                "f(x) {",
+                                "b0:",
+                                "    store x, x",
+                                "    %0 = load x",
+                                "    branch %0, b1, b2",
+                                "b1: ; preds b0",
+                                "    store x.1, 1",
+                                "    %1 = load x.1",
+                                "    %2 = call print(%1)",
+                                "    jump b2",
+                                "b2: ; preds b0, b1",
+                                "    return NIL",
+                                "}"
+                        )
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSsa(String test, String input, String expected) {
+        Ir.Function function = new IrPassManager(true).run(IrLowering.lower(parse(input)));
+        Assertions.assertEquals(expected, IrPrinter.print(function));
+    }
+
+    private static Stream<Arguments> testSsa() {
+        return Stream.of(
+                Arguments.of("If Else",
+                        "DEF f(n) DO\n    LET x = 0;\n    IF n > 0 DO\n        x = n;\n    ELSE\n        x = 1;\n    END\n    RETURN x;\nEND",
+                        lines(
+                                "f(n) {",
+                                "b0:",
+                                "    %0 = n > 0",
+                                "    branch %0, b1, b2",
+                                "b1: ; preds b0",
+                                "    jump b3",
+                                "b2: ; preds b0",
+                                "    jump b3",
+                                "b3: ; preds b1, b2",
+                                "    %1 = phi [b1: n, b2: 1]",
+                                "    return %1",
+                                "}"
+                        )
+                ),
+                Arguments.of("While",
+                        "DEF f(n) DO\n    LET i = 0;\n    LET s = 0;\n    WHILE i < n DO\n        LET t = i * 2;\n        s = s + t;\n        i = i + 1;\n    END\n    RETURN s;\nEND",
+                        lines(
+                                "f(n) {",
+                                "b0:",
+                                "    jump b1",
+                                "b1: ; preds b0, b2",
+                                "    %0 = phi [b0: 0, b2: %5]",
+                                "    %1 = phi [b0: 0, b2: %4]",
+                                "    %2 = %0 < n",
+                                "    branch %2, b2, b3",
+                                "b2: ; preds b1",
+                                "    %3 = %0 * 2",
+                                "    %4 = %1 + %3",
+                                "    %5 = %0 + 1",
+                                "    jump b1",
+                                "b3: ; preds b1",
+                                "    return %1",
+                                "}"
+                        )
+                ),
+                Arguments.of("Short Circuit",
+                        "DEF f(a, b) DO\n    RETURN a AND b OR a;\nEND",
+                        lines(
+                                "f(a, b) {",
+                                "b0:",
+                                "    branch a, b1, b2",
+                                "b1: ; preds b0",
+                                "    jump b2",
+                                "b2: ; preds b0, b1",
+                                "    %0 = phi [b0: a, b1: b]",
+                                "    branch %0, b4, b3",
+                                "b3: ; preds b2",
+                                "    jump b4",
+                                "b4: ; preds b2, b3",
+                                "    %1 = phi [b2: %0, b3: a]",
+                                "    return %1",
+                                "}"
+                        )
+                ),
+                Arguments.of("Unused Values",
+                        "DEF f(n) DO\n    n + 1;\n    LET x = n * 2;\n    print(n / 2);\nEND",
+                        lines(
+                                "f(n) {",
+                                "b0:",
+                                "    %0 = n / 2",
+                                "    %1 = call print(%0)",
+                                "    return NIL",
+                                "}"
+                        )
+                )
+        );
+    }
+
+    @Test
+    void testFor() {
+        Ast.Method method = new Ast.Method("f", Arrays.asList("list"), Arrays.asList("Any"), Optional.empty(), Arrays.asList(
+                new Ast.Stmt.Declaration("s", Optional.of(new Ast.Expr.Literal(null))),
+                new Ast.Stmt.For("x", new Ast.Expr.Access(Optional.empty(), "list"), Arrays.asList(
+                        new Ast.Stmt.Assignment(new Ast.Expr.Access(Optional.empty(), "s"), new Ast.Expr.Access(Optional.empty(), "x"))
+                )),
+                new Ast.Stmt.Return(new Ast.Expr.Access(Optional.empty(), "s"))
+        ));
+        Ir.Function function = new IrPassManager(true).run(IrLowering.lower(method));
+        Assertions.assertEquals(lines(
+                "f(list) {",
+                "b0:",
+                "    %0 = iterate list",
+                "    jump b1",
+                "b1: ; preds b0, b2",
+                "    %1 = phi [b0: NIL, b2: %3]",
+                "    %2 = hasnext %0",
+                "    branch %2, b2, b3",
+                "b2: ; preds b1",
+                "    %3 = next %0",
+                "    jump b1",
+                "b3: ; preds b1",
+                "    return %1",
+                "}"
+        ), IrPrinter.print(function));
+    }
+
+    @Test
+    void testDominators() {
+        Ir.Function function = IrLowering.lower(parse(
+                "DEF f(n) DO\n    WHILE n > 0 DO\n        IF n > 1 DO\n            n = n - 2;\n        ELSE\n            n = n - 1;\n        END\n    END\nEND"
+        ));
+        List<Ir.Block> blocks = function.getBlocks();
+        Ir.Block entry = blocks.get(0), header = blocks.get(1), body = blocks.get(2), exit = blocks.get(3);
+        Ir.Block then = blocks.get(4), otherwise = blocks.get(5), join = blocks.get(6);
+        Dominators dominators = Dominators.of(function);
+        Assertions.assertNull(dominators.getImmediateDominator(entry));
+        Assertions.assertEquals(entry, dominators.getImmediateDominator(header));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(body, exit)), new HashSet<>(dominators.getChildren(header)));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(then, otherwise, join)), new HashSet<>(dominators.getChildren(body)));
+        Assertions.assertTrue(dominators.dominates(header, join));
+        Assertions.assertFalse(dominators.dominates(then, join));
+        Assertions.assertEquals(Arrays.asList(join), Arrays.asList(dominators.getFrontier(then).toArray()));
+        Assertions.assertEquals(Arrays.asList(header), Arrays.asList(dominators.getFrontier(join).toArray()));
+        Assertions.assertEquals(Arrays.asList(header), Arrays.asList(dominators.getFrontier(header).toArray()));
+    }
+
+    @Test
+    void testPassManagerVerifies() {
+        Ir.Pass broken = function -> function.getEntry().getInstructions().add(0, new Ir.Binary("+",
+                new Ir.Binary("+", new Ir.Constant(1), new Ir.Constant(2)), new Ir.Constant(3)));
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class,
+                () -> new IrPassManager(true, new SsaBuilder(), broken).run(IrLowering.lower(parse("DEF f() DO\nEND"))));
+        Assertions.assertTrue(exception.getMessage().contains("not a value of the function"), exception.getMessage());
+        Assertions.assertDoesNotThrow(() -> new IrPassManager(new SsaBuilder(), broken).run(IrLowering.lower(parse("DEF f() DO\nEND"))));
+    }
+
+    @Test
+    void testPassManagerVerifiesPredecessors() {
+        Ir.Pass stale = function -> {
+            Ir.Block block = function.addBlock();
+            block.setTerminator(function.getEntry().getTerminator());
+            function.getEntry().setTerminator(new Ir.Jump(block));
+        };
+        Ir.Function function = IrLowering.lower(parse("DEF f() DO\nEND"));
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class,
+                () -> new IrPassManager(true, stale).run(function));
+        Assertions.assertTrue(exception.getMessage().contains("predecessors which are out of date after"), exception.getMessage());
+        Assertions.assertTrue(function.getBlocks().get(1).getPredecessors().isEmpty());
+    }
+
+    private static Ast.Method parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource().getMethods().get(0);
+    }
+
+    private static String lines(String... lines) {
+        return String.join("\n", lines) + "\n";
+    }
+
+}
@@ -0,0 +1,70 @@
+package plc.project;
+
+import java.nio.CharBuffer;
+
+/**
+ * Measures lexing throughput on inputs dominated by long identifiers and by
+ * indentation, where the lexer spends its time scanning runs of characters.
+ * This is not a JUnit test; run the main method with the test classpath.
+ * The {@link ReferenceLexer} is included as the per-character baseline.
+ */
+public final class LexerBenchmark {
+
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) {
+        String identifiers = identifiers(4000000);
+        String indentation = indentation(4000000);
+        benchmark("Long identifiers", identifiers);
+        benchmark("Indentation", indentation);
+    }
+
+    private static void benchmark(String name, String input) {
+        CharBuffer buffer = CharBuffer.wrap(input.toCharArray());
+        String reference = input.substring(0, input.length() / 20);
+        System.out.println(name + ":");
+        report("  Lexer (String)", input.length(), () -> new Lexer(input).lexBuffer());
+        report("  Lexer (CharBuffer)", input.length(), () -> new Lexer(buffer).lexBuffer());
+        report("  Lexer.lex()", input.length(), () -> new Lexer(input).lex());
+        report("  ReferenceLexer", reference.length(), () -> new ReferenceLexer(reference).lex());
+    }
+
+    /**
+     * Prints the throughput of the best of {@link #ITERATIONS} runs, in
+     * millions of characters per second.
+     */
+    private static void report(String name, int length, Runnable runnable) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            runnable.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-22s %8.1f Mchar/s%n", name, length / (best / 1000.0));
+    }
+
+    private static String identifiers(int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < length; i++) {
+            builder.append("a_rather_long_identifier-name_with_digits_0123456789_").append(i).append(' ');
+        }
+        return builder.toString();
+    }
+
+    private static String indentation(int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < length; i++) {
+            builder.append("\n").append(spaces(4 * (i % 8))).append("\t\t").append("x = y;");
+        }
+        return builder.toString();
+    }
+
+    private static String spaces(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(' ');
+        }
+        return builder.toString();
+    }
+
+}
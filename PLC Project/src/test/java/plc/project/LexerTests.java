@@ -2,10 +2,15 @@ package plc.project;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
@@ -170,6 +175,131 @@ public class LexerTests {
 
     }
 
+    @Test
+    void testSharedLiterals() {
+        List<Token> first = new Lexer("LET x = y;").lex();
+        List<Token> second = new Lexer("LET y = x;").lex();
+        Assertions.assertSame(first.get(0).getLiteral(), second.get(0).getLiteral());
+        Assertions.assertSame(first.get(2).getLiteral(), second.get(2).getLiteral());
+        Assertions.assertEquals(new Token(Token.Type.IDENTIFIER, "x", 4), first.get(1));
+    }
+
+    @Test
+    void testKinds() {
+        List<Token> tokens = new Lexer("LET LETTER <= < =;").lex();
+        Assertions.assertEquals(Token.Kind.LET, tokens.get(0).getKind());
+        Assertions.assertEquals(Token.Kind.IDENTIFIER, tokens.get(1).getKind());
+        Assertions.assertEquals(Token.Kind.LESS_EQUAL, tokens.get(2).getKind());
+        Assertions.assertEquals(Token.Kind.LESS, tokens.get(3).getKind());
+        Assertions.assertEquals(Token.Kind.ASSIGN, tokens.get(4).getKind());
+        Assertions.assertEquals(Token.Kind.SEMICOLON, tokens.get(5).getKind());
+        Assertions.assertEquals(Token.Kind.OPERATOR, new Token(Token.Type.OPERATOR, "@", 0).getKind());
+        Assertions.assertEquals(Token.Kind.STRING, new Token(Token.Type.STRING, "\"LET\"", 0).getKind());
+        TokenBuffer buffer = new Lexer("LET LETTER <= < =;").lexBuffer();
+        for (int i = 0; i < buffer.size(); i++) {
+            Assertions.assertEquals(tokens.get(i).getKind(), buffer.getKind(i));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testValue(String test, String input, String expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lexToken().getValue());
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().getValue(0));
+        Assertions.assertEquals(expected, new Token(new Lexer(input).lexToken().getType(), input, 0).getValue());
+    }
+
+    private static Stream<Arguments> testValue() {
+        return Stream.of(
+                Arguments.of("String", "\"abc\"", "abc"),
+                Arguments.of("Empty String", "\"\"", ""),
+                Arguments.of("String Escapes", "\"\\b\\n\\r\\t\\'\\\"\\\\\"", "\b\n\r\t'\"\\"),
+                Arguments.of("Character", "'c'", "c"),
+                Arguments.of("Character Escape", "'\\n'", "\n"),
+                Arguments.of("Identifier", "abc", null)
+        );
+    }
+
+    @Test
+    void testBuffer() {
+        String input = "DEF main() DO\n    LET s = \"a\\tb\";\n    RETURN -1.5 <= 'c';\nEND";
+        List<Token> expected = new Lexer(input).lex();
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        Assertions.assertEquals(expected.size(), buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            Assertions.assertEquals(expected.get(i), buffer.get(i));
+        }
+    }
+
+    @Test
+    void testParallel() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < 300000; i++) {
+            builder.append("DEF f").append(i).append("(a, b) DO\n    print(\"line\\n\" + 'c');\n    RETURN a.b(-1.5 <= +2);\nEND\n");
+        }
+        String input = builder.toString();
+        Assertions.assertEquals(new Lexer(input).lex(), new Lexer(input).lexParallel());
+        String invalid = input + "\"unterminated\n" + input;
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(invalid).lexParallel());
+        Assertions.assertEquals(input.length() + 13, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String source, int offset, int removed, String inserted, int changed) {
+        List<Token> tokens = new Lexer(source).lex();
+        Lexer.Relexed relexed = Lexer.relex(source, tokens, offset, removed, inserted);
+        String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        Assertions.assertEquals(edited, relexed.getSource());
+        Assertions.assertEquals(new Lexer(edited).lex(), relexed.getTokens());
+        Assertions.assertEquals(changed, relexed.getNewEnd() - relexed.getStart());
+        Assertions.assertEquals(tokens.size() - relexed.getOldEnd(), relexed.getTokens().size() - relexed.getNewEnd());
+    }
+
+    private static Stream<Arguments> testRelex() {
+        String source = "LET x = 1;\nDEF main() DO\n    print(x < y);\nEND";
+        return Stream.of(
+                Arguments.of("Rename", source, 4, 1, "value", 1),
+                Arguments.of("Extend Identifier", source, 5, 0, "yz", 1),
+                Arguments.of("Comparison", source, 38, 0, "=", 1),
+                Arguments.of("Decimal", source, 9, 0, ".5", 1),
+                Arguments.of("Whitespace", source, 10, 1, " ", 0),
+                Arguments.of("Insert Statement", source, 11, 0, "LET y = \"a\\n\";\n", 5),
+                Arguments.of("Remove Semicolon", source, 9, 1, "", 0),
+                Arguments.of("Remove Everything", source, 0, source.length(), "", 0)
+        );
+    }
+
+    @Test
+    void testFromPath(@TempDir Path directory) throws IOException {
+        String input = "DEF main() DO\n    print(\"caf\u00e9\");\n    RETURN 0;\nEND";
+        Path path = directory.resolve("main.plc");
+        Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(new Lexer(input).lex(), Lexer.fromPath(path).lex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testVerify(String test, String input) {
+        try {
+            new Lexer(input, true).lex();
+        } catch (ParseException e) {
+            // Identical exceptions from both lexers are not a mismatch.
+        }
+    }
+
+    private static Stream<Arguments> testVerify() {
+        return Stream.of(
+                Arguments.of("Method", "DEF main() DO\n\tprint(\"Hello,\\tWorld!\");\n\tRETURN 0;\nEND"),
+                Arguments.of("Numbers", "x+1 - -2.5 * 3. / .4"),
+                Arguments.of("Operators", "a<=b != c == d >= !e"),
+                Arguments.of("Characters", "'a' '\\n' '\\''"),
+                Arguments.of("Unterminated String", "\"unterminated"),
+                Arguments.of("Invalid Escape", "\"invalid\\escape\""),
+                Arguments.of("Unicode", "caf\u00e9 \u00e9")
+        );
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
@@ -0,0 +1,471 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class OptimizerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testConstantFolder(String test, String input, String expected) {
+        test(new ConstantFolder(), input, expected);
+    }
+
+    private static Stream<Arguments> testConstantFolder() {
+        return Stream.of(
+                Arguments.of("Arithmetic",
+                        "DEF main() DO\n    print(1 + 2 * 3 - 8 / 3);\nEND",
+                        "DEF main() DO\n    print(5);\nEND"
+                ),
+                Arguments.of("Decimal",
+                        "DEF main() DO\n    print(1.5 * 2.0 - 0.5);\nEND",
+                        "DEF main() DO\n    print(2.50);\nEND"
+                ),
+                Arguments.of("Decimal Division",
+                        "DEF main() DO\n    print(1.0 / 3.0);\nEND",
+                        "DEF main() DO\n    print(1.0 / 3.0);\nEND"
+                ),
+                Arguments.of("Division By Zero",
+                        "DEF main() DO\n    print(1 / 0);\nEND",
+                        "DEF main() DO\n    print(1 / 0);\nEND"
+                ),
+                Arguments.of("Out Of Range",
+                        "DEF main() DO\n    print(2147483647 + 1);\nEND",
+                        "DEF main() DO\n    print(2147483647 + 1);\nEND"
+                ),
+                Arguments.of("Comparison",
+                        "DEF main() DO\n    print(1 < 2 AND 'a' == 'b' OR \"a\" >= \"b\");\nEND",
+                        "DEF main() DO\n    print(FALSE);\nEND"
+                ),
+                Arguments.of("Short Circuit",
+                        "DEF main() DO\n    print(FALSE AND f());\n    print(TRUE OR f());\n    print(TRUE AND f());\nEND",
+                        "DEF main() DO\n    print(FALSE);\n    print(TRUE);\n    print(TRUE AND f());\nEND"
+                ),
+                Arguments.of("Concatenation",
+                        "DEF main() DO\n    print(\"a\" + 1 + 'c' + TRUE);\n    print(\"a\" + 1.5);\nEND",
+                        "DEF main() DO\n    print(\"a1ctrue\");\n    print(\"a\" + 1.5);\nEND"
+                ),
+                Arguments.of("Group",
+                        "DEF main() DO\n    print((1 + 2) * x);\nEND",
+                        "DEF main() DO\n    print(3 * x);\nEND"
+                ),
+                Arguments.of("Propagation",
+                        "LET x = 2;\nDEF main() DO\n    LET y = x * 3;\n    print(y + 1);\nEND",
+                        "LET x = 2;\nDEF main() DO\n    LET y = 6;\n    print(7);\nEND"
+                ),
+                Arguments.of("Assigned",
+                        "DEF main() DO\n    LET y = 1;\n    WHILE y < 10 DO\n        y = y + 1;\n    END\n    print(y + 1);\nEND",
+                        "DEF main() DO\n    LET y = 1;\n    WHILE y < 10 DO\n        y = y + 1;\n    END\n    print(y + 1);\nEND"
+                ),
+                Arguments.of("Shadowing",
+                        "DEF main(z) DO\n    LET y = 1;\n    IF z DO\n        LET y = z;\n        print(y);\n    END\n    print(y);\nEND",
+                        "DEF main(z) DO\n    LET y = 1;\n    IF z DO\n        LET y = z;\n        print(y);\n    END\n    print(1);\nEND"
+                ),
+                Arguments.of("Parameter",
+                        "LET x = 1;\nDEF f(x) DO\n    RETURN x;\nEND",
+                        "LET x = 1;\nDEF f(x) DO\n    RETURN x;\nEND"
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testDeadCodeEliminator(String test, String input, String expected) {
+        test(new DeadCodeEliminator(), input, expected);
+    }
+
+    private static Stream<Arguments> testDeadCodeEliminator() {
+        return Stream.of(
+                Arguments.of("After Return",
+                        "DEF f() DO\n    RETURN 1;\n    print(1);\n    print(2);\nEND",
+                        "DEF f() DO\n    RETURN 1;\nEND"
+                ),
+                Arguments.of("Nested Return",
+                        "DEF f(x) DO\n    WHILE x DO\n        RETURN 1;\n        x = 2;\n    END\n    RETURN 2;\nEND",
+                        "DEF f(x) DO\n    WHILE x DO\n        RETURN 1;\n    END\n    RETURN 2;\nEND"
+                ),
+                Arguments.of("If Both Return",
+                        "DEF f(x) DO\n    IF x DO\n        RETURN 1;\n    ELSE\n        RETURN 2;\n    END\n    RETURN 3;\nEND",
+                        "DEF f(x) DO\n    IF x DO\n        RETURN 1;\n    ELSE\n        RETURN 2;\n    END\nEND"
+                ),
+                Arguments.of("If True",
+                        "DEF f() DO\n    IF TRUE DO\n        print(1);\n    ELSE\n        print(2);\n    END\n    print(3);\nEND",
+                        "DEF f() DO\n    print(1);\n    print(3);\nEND"
+                ),
+                Arguments.of("If False",
+                        "DEF f() DO\n    IF FALSE DO\n        print(1);\n    END\n    print(3);\nEND",
+                        "DEF f() DO\n    print(3);\nEND"
+                ),
+                Arguments.of("Taken Branch Returns",
+                        "DEF f() DO\n    IF FALSE DO\n        print(1);\n    ELSE\n        RETURN 2;\n    END\n    print(3);\nEND",
+                        "DEF f() DO\n    RETURN 2;\nEND"
+                ),
+                Arguments.of("Taken Branch Declares",
+                        "DEF f() DO\n    IF FALSE DO\n        print(1);\n    ELSE\n        LET x = 2;\n        print(x);\n    END\nEND",
+                        "DEF f() DO\n    LET x = 2;\n    print(x);\nEND"
+                ),
+                Arguments.of("Taken Branch Redeclares",
+                        "DEF f(x) DO\n    IF FALSE DO\n        print(1);\n    ELSE\n        print(x);\n        LET x = x + 1;\n        print(x);\n    END\n    print(x);\nEND",
+                        "DEF f(x) DO\n    print(x);\n    LET x_0 = x + 1;\n    print(x_0);\n    print(x);\nEND"
+                ),
+                Arguments.of("While False",
+                        "DEF f() DO\n    WHILE FALSE DO\n        print(1);\n    END\n    print(2);\nEND",
+                        "DEF f() DO\n    print(2);\nEND"
+                ),
+                Arguments.of("While Variable",
+                        "DEF f(x) DO\n    WHILE x DO\n        print(1);\n    END\nEND",
+                        "DEF f(x) DO\n    WHILE x DO\n        print(1);\n    END\nEND"
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testCommonSubexpressionEliminator(String test, String input, String expected) {
+        test(new CommonSubexpressionEliminator(), input, expected);
+    }
+
+    private static Stream<Arguments> testCommonSubexpressionEliminator() {
+        return Stream.of(
+                Arguments.of("Same Statement",
+                        "DEF f(a, b) DO\n    print(a * b + a * b);\nEND",
+                        "DEF f(a, b) DO\n    LET cse0 = a * b;\n    print(cse0 + cse0);\nEND"
+                ),
+                Arguments.of("Across Statements",
+                        "DEF f(a, b) DO\n    LET x = a * b - 1;\n    print(x);\n    RETURN a * b;\nEND",
+                        "DEF f(a, b) DO\n    LET cse0 = a * b;\n    LET x = cse0 - 1;\n    print(x);\n    RETURN cse0;\nEND"
+                ),
+                Arguments.of("Largest First",
+                        "DEF f(a, b, c) DO\n    print((a + b) * c);\n    print((a + b) * c);\nEND",
+                        "DEF f(a, b, c) DO\n    LET cse0 = (a + b) * c;\n    print(cse0);\n    print(cse0);\nEND"
+                ),
+                Arguments.of("Assigned",
+                        "DEF f(a, b) DO\n    print(a * b);\n    a = 2;\n    print(a * b);\nEND",
+                        "DEF f(a, b) DO\n    print(a * b);\n    a = 2;\n    print(a * b);\nEND"
+                ),
+                Arguments.of("Field",
+                        "LET n = 1;\nDEF f() DO\n    print(n * 2 + n * 2);\nEND",
+                        "LET n = 1;\nDEF f() DO\n    print(n * 2 + n * 2);\nEND"
+                ),
+                Arguments.of("Pure Call",
+                        "DEF g(x) DO\n    RETURN x * 2;\nEND\nDEF f(a) DO\n    print(g(a) + g(a));\nEND",
+                        "DEF g(x) DO\n    RETURN x * 2;\nEND\nDEF f(a) DO\n    LET cse0 = g(a);\n    print(cse0 + cse0);\nEND"
+                ),
+                Arguments.of("Impure Call",
+                        "DEF g(x) DO\n    print(x);\n    RETURN x;\nEND\nDEF f(a) DO\n    print(g(a) + g(a));\nEND",
+                        "DEF g(x) DO\n    print(x);\n    RETURN x;\nEND\nDEF f(a) DO\n    print(g(a) + g(a));\nEND"
+                ),
+                Arguments.of("Short Circuit",
+                        "DEF f(a, b) DO\n    print(a != 0 AND b / a > 1);\n    print(b / a);\nEND",
+                        "DEF f(a, b) DO\n    print(a != 0 AND b / a > 1);\n    print(b / a);\nEND"
+                ),
+                Arguments.of("Unconditional First",
+                        "DEF f(a, b) DO\n    print(b / a);\n    print(a != 0 AND b / a > 1);\nEND",
+                        "DEF f(a, b) DO\n    LET cse0 = b / a;\n    print(cse0);\n    print(a != 0 AND cse0 > 1);\nEND"
+                ),
+                Arguments.of("Loop Body",
+                        "DEF f(a, b) DO\n    print(a * b);\n    WHILE a DO\n        print(a * b);\n    END\nEND",
+                        "DEF f(a, b) DO\n    print(a * b);\n    WHILE a DO\n        print(a * b);\n    END\nEND"
+                ),
+                Arguments.of("Fresh Name",
+                        "DEF f(cse0, b) DO\n    print(cse0 * b - cse0 * b);\nEND",
+                        "DEF f(cse0, b) DO\n    LET cse1 = cse0 * b;\n    print(cse1 - cse1);\nEND"
+                ),
+                Arguments.of("Field Reads",
+                        "DEF f(a, b) DO\n    LET x = a.length + b.length;\n    LET y = a.length + b.length;\n    RETURN x * y;\nEND",
+                        "DEF f(a, b) DO\n    LET cse0 = a.length + b.length;\n    LET x = cse0;\n    LET y = cse0;\n    RETURN x * y;\nEND"
+                ),
+                Arguments.of("Field Assignment",
+                        "DEF f(a, b) DO\n    LET x = a.length + b.length;\n    b.length = 0;\n    RETURN x * (a.length + b.length);\nEND",
+                        "DEF f(a, b) DO\n    LET x = a.length + b.length;\n    b.length = 0;\n    RETURN x * (a.length + b.length);\nEND"
+                ),
+                Arguments.of("Field Reads Across Impure Call",
+                        "DEF f(a, b) DO\n    LET x = a.length + b.length;\n    print(x, a.length + b.length);\n    RETURN a.length + b.length;\nEND",
+                        "DEF f(a, b) DO\n    LET x = a.length + b.length;\n    print(x, a.length + b.length);\n    RETURN a.length + b.length;\nEND"
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLoopInvariantCodeMotion(String test, String input, String expected) {
+        test(new LoopInvariantCodeMotion(), input, expected);
+    }
+
+    private static Stream<Arguments> testLoopInvariantCodeMotion() {
+        return Stream.of(
+                Arguments.of("Condition And Body",
+                        "DEF f(n) DO\n    LET i = 0;\n    WHILE i < n * 2 DO\n        print(i + n * 2);\n        i = i + 1;\n    END\nEND",
+                        "DEF f(n) DO\n    LET i = 0;\n    LET licm0 = n * 2;\n    WHILE i < licm0 DO\n        print(i + licm0);\n        i = i + 1;\n    END\nEND"
+                ),
+                Arguments.of("Group",
+                        "DEF f(a, b, i) DO\n    WHILE i DO\n        print((a + b) * i);\n        i = FALSE;\n    END\nEND",
+                        "DEF f(a, b, i) DO\n    LET licm0 = a + b;\n    WHILE i DO\n        print(licm0 * i);\n        i = FALSE;\n    END\nEND"
+                ),
+                Arguments.of("Nested",
+                        "DEF f(a, b, i, j) DO\n    WHILE i DO\n        WHILE j DO\n            print(a * b);\n        END\n    END\nEND",
+                        "DEF f(a, b, i, j) DO\n    LET licm0 = a * b;\n    WHILE i DO\n        WHILE j DO\n            print(licm0);\n        END\n    END\nEND"
+                ),
+                Arguments.of("Assigned",
+                        "DEF f(n, i) DO\n    WHILE i DO\n        print(n * 2);\n        n = n + 1;\n    END\nEND",
+                        "DEF f(n, i) DO\n    WHILE i DO\n        print(n * 2);\n        n = n + 1;\n    END\nEND"
+                ),
+                Arguments.of("Declared",
+                        "DEF f(i) DO\n    WHILE i DO\n        LET k = 1;\n        print(k * 2);\n    END\nEND",
+                        "DEF f(i) DO\n    WHILE i DO\n        LET k = 1;\n        print(k * 2);\n    END\nEND"
+                ),
+                Arguments.of("Division",
+                        "DEF f(a, b, i) DO\n    WHILE i DO\n        print(a / b);\n    END\nEND",
+                        "DEF f(a, b, i) DO\n    WHILE i DO\n        print(a / b);\n    END\nEND"
+                ),
+                Arguments.of("Call",
+                        "DEF g(x) DO\n    RETURN x;\nEND\nDEF f(a, i) DO\n    WHILE i DO\n        print(g(a) * 2);\n    END\nEND",
+                        "DEF g(x) DO\n    RETURN x;\nEND\nDEF f(a, i) DO\n    WHILE i DO\n        print(g(a) * 2);\n    END\nEND"
+                ),
+                Arguments.of("Field",
+                        "LET n = 1;\nDEF f(i) DO\n    WHILE i DO\n        print(n * 2);\n    END\nEND",
+                        "LET n = 1;\nDEF f(i) DO\n    WHILE i DO\n        print(n * 2);\n    END\nEND"
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testInliner(String test, String input, String expected) {
+        test(new Inliner(), input, expected);
+    }
+
+    private static Stream<Arguments> testInliner() {
+        return Stream.of(
+                Arguments.of("Expression",
+                        "DEF sq(x) DO\n    RETURN x * x;\nEND\nDEF f(a) DO\n    print(sq(a) + 1);\nEND",
+                        "DEF sq(x) DO\n    RETURN x * x;\nEND\nDEF f(a) DO\n    print((a * a) + 1);\nEND"
+                ),
+                Arguments.of("Argument Expression",
+                        "DEF sq(x) DO\n    RETURN x * x;\nEND\nDEF f(a) DO\n    LET y = sq(a + 1);\nEND",
+                        "DEF sq(x) DO\n    RETURN x * x;\nEND\nDEF f(a) DO\n    LET x_0 = a + 1;\n    LET y = x_0 * x_0;\nEND"
+                ),
+                Arguments.of("Statements",
+                        "DEF log(m) DO\n    LET s = \"> \" + m;\n    print(s);\nEND\nDEF f(a) DO\n    log(a);\n    log(a);\nEND",
+                        "DEF log(m) DO\n    LET s = \"> \" + m;\n    print(s);\nEND\nDEF f(a) DO\n    LET m_0 = a;\n    LET s_0 = \"> \" + m_0;\n    print(s_0);\n    LET m_1 = a;\n    LET s_1 = \"> \" + m_1;\n    print(s_1);\nEND"
+                ),
+                Arguments.of("Return",
+                        "DEF twice(x) DO\n    LET y = x * 2;\n    RETURN y;\nEND\nDEF f(a) DO\n    RETURN twice(a + 1);\nEND",
+                        "DEF twice(x) DO\n    LET y = x * 2;\n    RETURN y;\nEND\nDEF f(a) DO\n    LET x_0 = a + 1;\n    LET y_0 = x_0 * 2;\n    RETURN y_0;\nEND"
+                ),
+                Arguments.of("Assignment",
+                        "DEF twice(x) DO\n    LET y = x * 2;\n    RETURN y;\nEND\nDEF f(a) DO\n    a = twice(a);\nEND",
+                        "DEF twice(x) DO\n    LET y = x * 2;\n    RETURN y;\nEND\nDEF f(a) DO\n    LET x_0 = a;\n    LET y_0 = x_0 * 2;\n    a = y_0;\nEND"
+                ),
+                Arguments.of("Recursive",
+                        "DEF fact(n) DO\n    RETURN n * fact(n - 1);\nEND\nDEF f() DO\n    print(fact(3));\nEND",
+                        "DEF fact(n) DO\n    RETURN n * fact(n - 1);\nEND\nDEF f() DO\n    print(fact(3));\nEND"
+                ),
+                Arguments.of("Mutually Recursive",
+                        "DEF even(n) DO\n    RETURN n == 0 OR odd(n - 1);\nEND\nDEF odd(n) DO\n    RETURN n != 0 AND even(n - 1);\nEND\nDEF f() DO\n    print(even(3));\nEND",
+                        "DEF even(n) DO\n    RETURN n == 0 OR odd(n - 1);\nEND\nDEF odd(n) DO\n    RETURN n != 0 AND even(n - 1);\nEND\nDEF f() DO\n    print(even(3));\nEND"
+                ),
+                Arguments.of("Early Return",
+                        "DEF g(x) DO\n    IF x DO\n        RETURN 1;\n    END\n    RETURN 2;\nEND\nDEF f(a) DO\n    LET y = g(a);\nEND",
+                        "DEF g(x) DO\n    IF x DO\n        RETURN 1;\n    END\n    RETURN 2;\nEND\nDEF f(a) DO\n    LET y = g(a);\nEND"
+                ),
+                Arguments.of("Field",
+                        "LET n = 1;\nDEF get() DO\n    RETURN n;\nEND\nDEF f() DO\n    print(get());\nEND",
+                        "LET n = 1;\nDEF get() DO\n    RETURN n;\nEND\nDEF f() DO\n    print(n);\nEND"
+                ),
+                Arguments.of("Captured Field",
+                        "LET n = 1;\nDEF get() DO\n    RETURN n;\nEND\nDEF f() DO\n    LET n = 2;\n    print(get());\nEND",
+                        "LET n = 1;\nDEF get() DO\n    RETURN n;\nEND\nDEF f() DO\n    LET n = 2;\n    print(get());\nEND"
+                )
+        );
+    }
+
+    @Test
+    void testInlinerBudget() {
+        String input = "DEF log(m) DO\n    print(m);\n    print(m);\nEND\nDEF f() DO\n    log(1);\nEND";
+        test(new Inliner(4), input, input);
+        test(new Inliner(), input, "DEF log(m) DO\n    print(m);\n    print(m);\nEND\nDEF f() DO\n    LET m_0 = 1;\n    print(m_0);\n    print(m_0);\nEND");
+    }
+
+    @Test
+    void testInlinerParameterType() {
+        Environment.Variable parameter = new Environment.Variable("p", "p", Environment.Type.ANY, Environment.NIL);
+        Ast.Expr.Access receiver = new Ast.Expr.Access(Optional.empty(), "p");
+        receiver.setVariable(parameter);
+        Ast.Expr.Literal string = new Ast.Expr.Literal("s");
+        string.setType(Environment.Type.STRING);
+        Ast.Expr.Access access = new Ast.Expr.Access(Optional.empty(), "p");
+        access.setVariable(parameter);
+        Ast.Expr.Function print = new Ast.Expr.Function(Optional.empty(), "print", Arrays.asList(access));
+        print.setFunction(new Environment.Function("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL));
+        Ast.Expr.Literal one = new Ast.Expr.Literal(BigInteger.ONE);
+        one.setType(Environment.Type.INTEGER);
+        Ast.Expr.Function call = new Ast.Expr.Function(Optional.empty(), "g", Arrays.asList(one));
+        call.setFunction(new Environment.Function("g", "g", Arrays.asList(Environment.Type.ANY), Environment.Type.INTEGER, args -> Environment.NIL));
+        Ast.Source source = new Ast.Source(Arrays.asList(), Arrays.asList(
+                new Ast.Method("g", Arrays.asList("p"), Arrays.asList("Any"), Optional.of("Integer"), Arrays.asList(
+                        new Ast.Stmt.Assignment(receiver, string),
+                        new Ast.Stmt.Expression(print)
+                )),
+                new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                        new Ast.Stmt.Expression(call)
+                ))
+        ));
+        Ast.Source optimized = new Optimizer(Arrays.asList(new Inliner())).optimize(source);
+        Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) optimized.getMethods().get(1).getStatements().get(0);
+        Assertions.assertEquals(Environment.Type.ANY, declaration.getVariable().getType());
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(optimized);
+        Assertions.assertTrue(writer.toString().contains(String.join(System.lineSeparator(),
+                "    int main() {",
+                "        Object p_0 = 1;",
+                "        p_0 = \"s\";",
+                "        System.out.println(p_0);",
+                "    }"
+        )), writer.toString());
+    }
+
+    @Test
+    void testRemovals() {
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        Optimizer optimizer = new Optimizer(Arrays.asList(new ConstantFolder(), eliminator));
+        Ast.Source source = parse("LET debug = FALSE;\nDEF main() DO\n    IF debug DO\n        print(1);\n    END\n    WHILE debug AND TRUE DO\n        print(2);\n    END\n    RETURN 0;\n    print(3);\nEND");
+        Assertions.assertEquals(parse("LET debug = FALSE;\nDEF main() DO\n    RETURN 0;\nEND"), optimizer.optimize(source));
+        List<DeadCodeEliminator.Removal> removals = eliminator.getRemovals();
+        Assertions.assertEquals(3, removals.size());
+        Assertions.assertEquals(DeadCodeEliminator.Reason.CONSTANT_CONDITION, removals.get(0).getReason());
+        Assertions.assertEquals(DeadCodeEliminator.Reason.NEVER_ENTERED, removals.get(1).getReason());
+        Assertions.assertEquals(DeadCodeEliminator.Reason.UNREACHABLE, removals.get(2).getReason());
+        for (DeadCodeEliminator.Removal removal : removals) {
+            Assertions.assertEquals("main", removal.getMethod());
+        }
+    }
+
+    @Test
+    void testTakenBranchGenerator() {
+        Environment.Variable variable = new Environment.Variable("x", "x", Environment.Type.INTEGER, Environment.NIL);
+        Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration("x", Optional.of(new Ast.Expr.Literal(BigInteger.ONE)));
+        declaration.setVariable(variable);
+        Ast.Expr.Access access = new Ast.Expr.Access(Optional.empty(), "x");
+        access.setVariable(variable);
+        Ast.Source source = new Ast.Source(Arrays.asList(), Arrays.asList(new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                new Ast.Stmt.If(new Ast.Expr.Literal(true), Arrays.asList(declaration, new Ast.Stmt.Return(access)), Arrays.asList()),
+                new Ast.Stmt.Return(new Ast.Expr.Literal(BigInteger.ZERO))
+        ))));
+        Ast.Source optimized = new Optimizer(Arrays.asList(new DeadCodeEliminator())).optimize(source);
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(optimized);
+        Assertions.assertEquals(String.join(System.lineSeparator(),
+                "public class Main {",
+                "",
+                "    public static void main(String[] args) {",
+                "        System.exit(new Main().main());",
+                "    }",
+                "",
+                "    int main() {",
+                "        int x = 1;",
+                "        return x;",
+                "    }",
+                "",
+                "}"
+        ), writer.toString());
+    }
+
+    @Test
+    void testUnchanged() {
+        Ast.Source source = parse("LET x = y;\nDEF main() DO\n    print(x + 1);\nEND");
+        Assertions.assertSame(source, new Optimizer().optimize(source));
+    }
+
+    @Test
+    void testAnnotations() {
+        Ast.Expr.Binary binary = new Ast.Expr.Binary("+", new Ast.Expr.Literal(BigInteger.ONE), new Ast.Expr.Literal(BigInteger.ONE));
+        binary.setType(Environment.Type.INTEGER);
+        Ast.Expr folded = new ConstantFolder().rewrite(binary);
+        Assertions.assertEquals(new Ast.Expr.Literal(BigInteger.valueOf(2)), withoutType(folded));
+        Assertions.assertEquals(Environment.Type.INTEGER, folded.getType());
+    }
+
+    @Test
+    void testInterpreterAndGenerator() {
+        Ast.Source source = analyze("DEF main() DO\n    LET n = 0;\n    n = 3;\n    LET i = 0;\n    LET go = TRUE;\n    WHILE go DO\n        print(i + n * 2);\n        i = i + 1;\n        go = FALSE;\n    END\nEND");
+        Ast.Source optimized = new Optimizer().optimize(source);
+        PrintStream sysout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            new Interpreter(new Scope(null)).visit(optimized);
+            Assertions.assertEquals("6" + System.lineSeparator(), out.toString());
+        } finally {
+            System.setOut(sysout);
+        }
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(optimized);
+        Assertions.assertEquals(String.join(System.lineSeparator(),
+                "public class Main {",
+                "",
+                "    public static void main(String[] args) {",
+                "        System.exit(new Main().main());",
+                "    }",
+                "",
+                "    int main() {",
+                "        int n = 0;",
+                "        n = 3;",
+                "        int i = 0;",
+                "        boolean go = true;",
+                "        int licm0 = n * 2;",
+                "        while (go) {",
+                "            System.out.println(i + licm0);",
+                "            i = i + 1;",
+                "            go = false;",
+                "        }",
+                "    }",
+                "",
+                "}"
+        ), writer.toString());
+    }
+
+    private static Ast.Expr withoutType(Ast.Expr expr) {
+        return new Ast.Expr.Literal(((Ast.Expr.Literal) expr).getLiteral());
+    }
+
+    static void test(AstRewriter pass, String input, String expected) {
+        Ast.Source optimized = new Optimizer(Arrays.asList(pass)).optimize(parse(input));
+        Assertions.assertEquals(parse(expected), optimized);
+    }
+
+    /**
+     * Parses and analyzes a source, giving its methods an Integer return type
+     * since the parser does not read type names.
+     */
+    static Ast.Source analyze(String input) {
+        Ast.Source parsed = parse(input);
+        List<Ast.Method> methods = new ArrayList<>();
+        for (Ast.Method method : parsed.getMethods()) {
+            methods.add(new Ast.Method(method.getName(), method.getParameters(), method.getParameterTypeNames(),
+                    Optional.of("Integer"), method.getStatements()));
+        }
+        Ast.Source source = new Ast.Source(parsed.getFields(), methods);
+        new Analyzer(new Scope(null)).visit(source);
+        return source;
+    }
+
+    static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
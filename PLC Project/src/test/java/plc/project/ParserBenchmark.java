@@ -0,0 +1,49 @@
+package plc.project;
+
+import java.util.List;
+
+/**
+ * Compares parsing expression heavy sources by descending through a method
+ * for each precedence level against the table driven Pratt parser, taking
+ * turns so both are measured after warming up. This is not a JUnit test; run
+ * the main method with the test classpath.
+ */
+public final class ParserBenchmark {
+
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) {
+        List<Token> tokens = new Lexer(source(20000)).lex();
+        for (int round = 0; round < 3; round++) {
+            report("Recursive descent", tokens.size(), () -> new Parser(tokens).parseSource());
+            report("Pratt", tokens.size(), () -> {
+                Parser parser = new Parser(tokens);
+                parser.setPratt(true);
+                parser.parseSource();
+            });
+        }
+    }
+
+    /**
+     * Prints the throughput of the best of {@link #ITERATIONS} runs, in
+     * millions of tokens per second.
+     */
+    private static void report(String name, int size, Runnable runnable) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            runnable.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-22s %8.2f Mtoken/s%n", name, size / (best / 1000.0));
+    }
+
+    private static String source(int statements) {
+        StringBuilder builder = new StringBuilder("DEF main() DO\n");
+        for (int i = 0; i < statements; i++) {
+            builder.append("    x = a * b + c - d / 2 < e AND f(g, h + 1) != i OR j;\n");
+        }
+        return builder.append("END\n").toString();
+    }
+
+}
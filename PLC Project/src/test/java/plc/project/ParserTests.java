@@ -8,6 +8,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -303,6 +304,14 @@ final class ParserTests {
                 Arguments.of("Escape Character",
                         Arrays.asList(new Token(Token.Type.STRING, "\"Hello,\\nWorld!\"", 0)),
                         new Ast.Expr.Literal("Hello,\nWorld!")
+                ),
+                Arguments.of("Quote Escapes",
+                        Arrays.asList(new Token(Token.Type.STRING, "\"\\\"a\\\\b\\'\"", 0)),
+                        new Ast.Expr.Literal("\"a\\b'")
+                ),
+                Arguments.of("Character Escape",
+                        Arrays.asList(new Token(Token.Type.CHARACTER, "'\\t'", 0)),
+                        new Ast.Expr.Literal('\t')
                 )
         );
     }
@@ -552,6 +561,120 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @Test
+    void testStreaming() {
+        String input = "LET x = 1;\nDEF main() DO\n    WHILE x != 10 DO\n        print(x);\n        x = x * 2;\n    END\nEND";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).tokens()).parseSource());
+    }
+
+    @Test
+    void testBuffer() {
+        String input = "LET x = 1;\nDEF main() DO\n    IF x >= 1 AND x != 2 DO\n        print(\"x\");\n    END\nEND";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).parseSource());
+    }
+
+    @Test
+    void testParallel() {
+        StringBuilder builder = new StringBuilder("LET x = 1;\n");
+        for (int i = 0; i < 2000; i++) {
+            builder.append("DEF f").append(i).append("(a, b) DO\n    IF a < b DO\n        WHILE a != b DO\n            a = a + 1;\n        END\n    ELSE\n        RETURN b;\n    END\n    RETURN a * 2;\nEND\n");
+        }
+        String input = builder.toString();
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).parseSourceParallel());
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).parseSourceParallel());
+        for (String invalid : Arrays.asList(input.replace("DEF f1000(a, b)", "DEF f1000(a b)"), input + "x;")) {
+            ParseException sequential = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(invalid).lex()).parseSource());
+            ParseException parallel = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(invalid).lex()).parseSourceParallel());
+            Assertions.assertEquals(sequential.getMessage(), parallel.getMessage());
+            Assertions.assertEquals(sequential.getIndex(), parallel.getIndex());
+        }
+    }
+
+    @Test
+    void testLazy() {
+        String input = "LET x = 1;\nDEF main() DO\n    WHILE x != 10 DO\n        IF x < 5 DO\n            x = x + 1;\n        ELSE\n            x = x * 2;\n        END\n    END\nEND\nDEF unused(a) DO\n    RETURN a;\nEND";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setLazy(true);
+        Ast.Source source = parser.parseSource();
+        Assertions.assertFalse(source.getMethods().get(0).hasStatements());
+        Assertions.assertFalse(source.getMethods().get(1).hasStatements());
+        Assertions.assertEquals(expected.getMethods().get(0).getStatements(), source.getMethods().get(0).getStatements());
+        Assertions.assertFalse(source.getMethods().get(1).hasStatements());
+        Assertions.assertEquals(expected, source);
+    }
+
+    @Test
+    void testLazyException() {
+        String input = "DEF main() DO\n    print(1);\nEND\nDEF invalid() DO\n    LET = 1;\nEND";
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseSource());
+        Parser parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setLazy(true);
+        Ast.Source source = parser.parseSource();
+        Assertions.assertEquals(1, source.getMethods().get(0).getStatements().size());
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> source.getMethods().get(1).getStatements());
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRecovering(String test, String input, List<Integer> indices, List<String> methods) {
+        List<ParseException> errors = new ArrayList<>();
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSourceRecovering(errors);
+        List<Integer> received = new ArrayList<>();
+        for (ParseException error : errors) {
+            received.add(error.getIndex());
+        }
+        Assertions.assertEquals(indices, received);
+        List<String> names = new ArrayList<>();
+        for (Ast.Method method : source.getMethods()) {
+            names.add(method.getName());
+        }
+        Assertions.assertEquals(methods, names);
+        if (indices.isEmpty()) {
+            Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), source);
+        } else {
+            Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseSource());
+        }
+    }
+
+    private static Stream<Arguments> testRecovering() {
+        return Stream.of(
+                Arguments.of("Valid", "LET x = 1;\nDEF main() DO\n    print(x);\nEND",
+                        Arrays.asList(), Arrays.asList("main")),
+                Arguments.of("Multiple Errors", "LET x = ;\nLET y = 2;\nDEF main() DO\n    print(1)\n    x = 2;\n    IF x DO\n        y = ;\n    END\nEND\nDEF f( DO\n    RETURN 1;\nEND\nDEF g() DO\n    RETURN 2;\nEND",
+                        Arrays.asList(3, 18, 27, 34), Arrays.asList("main", "g")),
+                Arguments.of("Missing End", "DEF main() DO\n    WHILE x DO\n        x = 1;\nDEF g() DO\n    RETURN 2;\nEND",
+                        Arrays.asList(12, 12), Arrays.asList("g")),
+                Arguments.of("Token After Methods", "DEF main() DO END END LET x = 1; )",
+                        Arrays.asList(6), Arrays.asList("main"))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testPratt(String test, String input) {
+        Ast.Expr expected = new Parser(new Lexer(input).lex()).parseExpression();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).parsePrattExpression());
+        Parser parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setPratt(true);
+        Assertions.assertEquals(expected, parser.parseExpression());
+    }
+
+    private static Stream<Arguments> testPratt() {
+        return Stream.of(
+                Arguments.of("Single Operand", "x"),
+                Arguments.of("Left Associative", "a - b - c + d"),
+                Arguments.of("Precedence", "a + b * c - d / e"),
+                Arguments.of("All Levels", "a OR b AND c == d + e * f < g - h"),
+                Arguments.of("Mixed Descending", "a * b + c < d AND e"),
+                Arguments.of("Groups and Calls", "(a + b) * f(c, d - 1) <= obj.method(e * 2) != \"s\"")
+        );
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
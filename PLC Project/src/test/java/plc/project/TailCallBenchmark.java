@@ -0,0 +1,76 @@
+package plc.project;
+
+import java.math.BigInteger;
+
+/**
+ * Runs deeply recursive methods in the {@link Interpreter} and reports the
+ * Java stack depth at the deepest call, which a {@code depth()} function
+ * defined for the benchmark returns (the JVM stops counting at 1024 frames).
+ * Tail calls, whether self recursive ({@code count}) or mutually recursive
+ * ({@code even} and {@code odd}), use the same depth however deep the
+ * recursion is. The recursive call of {@code sum} is not a tail call, since
+ * its result is declared before being returned, so its depth grows until the
+ * stack overflows. This is not a JUnit test; run the main method with the test
+ * classpath.
+ */
+public final class TailCallBenchmark {
+
+    private static final String SOURCE = "" +
+            "DEF count(n, acc) DO\n" +
+            "    IF n > 0 DO\n" +
+            "        RETURN count(n - 1, acc + 1);\n" +
+            "    ELSE\n" +
+            "        RETURN depth();\n" +
+            "    END\n" +
+            "END\n" +
+            "DEF even(n) DO\n" +
+            "    IF n > 0 DO\n" +
+            "        RETURN odd(n - 1);\n" +
+            "    ELSE\n" +
+            "        RETURN depth();\n" +
+            "    END\n" +
+            "END\n" +
+            "DEF odd(n) DO\n" +
+            "    IF n > 0 DO\n" +
+            "        RETURN even(n - 1);\n" +
+            "    ELSE\n" +
+            "        RETURN depth();\n" +
+            "    END\n" +
+            "END\n" +
+            "DEF sum(n) DO\n" +
+            "    IF n > 0 DO\n" +
+            "        LET depth = sum(n - 1);\n" +
+            "        RETURN depth;\n" +
+            "    ELSE\n" +
+            "        RETURN depth();\n" +
+            "    END\n" +
+            "END\n";
+
+    public static void main(String[] args) {
+        Ast.Source source = new Parser(new Lexer(SOURCE).lex()).parseSource();
+        for (int n = 10; n <= 1000000; n *= 10) {
+            report(source, "count(" + n + ", 0)");
+            report(source, "even(" + n + ")");
+            report(source, "sum(" + n + ")");
+        }
+    }
+
+    private static void report(Ast.Source source, String call) {
+        Scope scope = new Scope(null);
+        scope.defineFunction("depth", 0, arguments -> Environment.create(BigInteger.valueOf(Thread.currentThread().getStackTrace().length)));
+        Interpreter interpreter = new Interpreter(scope);
+        for (Ast.Method method : source.getMethods()) {
+            interpreter.visit(method);
+        }
+        Ast.Expr expr = new Parser(new Lexer(call).lex()).parseExpression();
+        long start = System.nanoTime();
+        String result;
+        try {
+            result = "stack depth " + interpreter.visit(expr).getValue();
+        } catch (StackOverflowError e) {
+            result = "stack overflow";
+        }
+        System.out.printf("%-20s %-20s %8.2f ms%n", call, result, (System.nanoTime() - start) / 1000000.0);
+    }
+
+}
@@ -0,0 +1,98 @@
+package plc.project;
+
+/**
+ * Compares dispatching nodes through {@link Ast#accept(Ast.Visitor)} against
+ * the chain of {@code instanceof} tests {@link Ast.Visitor#visit(Ast)} used
+ * before, on an interpreter heavy workload. Both run the same {@link
+ * Interpreter} and take turns so both are measured after warming up. This is
+ * not a JUnit test; run the main method with the test classpath.
+ */
+public final class VisitorBenchmark {
+
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) {
+        Ast.Source source = new Parser(new Lexer(source(20000)).lex()).parseSource();
+        for (int round = 0; round < 3; round++) {
+            report("accept", () -> new Interpreter(null).visit(source));
+            report("instanceof chain", () -> new ChainInterpreter().visit(source));
+        }
+    }
+
+    /**
+     * Prints the time of the best of {@link #ITERATIONS} runs.
+     */
+    private static void report(String name, Runnable runnable) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            runnable.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-22s %8.2f ms%n", name, best / 1000000.0);
+    }
+
+    private static String source(int iterations) {
+        return "LET limit = " + iterations + ";\n" +
+                "DEF main() DO\n" +
+                "    LET i = 0;\n" +
+                "    LET sum = 0;\n" +
+                "    LET big = FALSE;\n" +
+                "    WHILE i < limit DO\n" +
+                "        sum = sum + (i - 7) * 2 - (limit - i) * 3;\n" +
+                "        big = i * 2 > limit OR big == TRUE;\n" +
+                "        i = i + 1;\n" +
+                "    END\n" +
+                "    RETURN sum;\n" +
+                "END\n";
+    }
+
+    /**
+     * An interpreter dispatching with the chain of {@code instanceof} tests.
+     */
+    private static final class ChainInterpreter extends Interpreter {
+
+        private ChainInterpreter() {
+            super(null);
+        }
+
+        @Override
+        public Environment.PlcObject visit(Ast ast) {
+            if (ast instanceof Ast.Source) {
+                return visit((Ast.Source) ast);
+            } else if (ast instanceof Ast.Field) {
+                return visit((Ast.Field) ast);
+            } else if (ast instanceof Ast.Method) {
+                return visit((Ast.Method) ast);
+            } else if (ast instanceof Ast.Stmt.Expression) {
+                return visit((Ast.Stmt.Expression) ast);
+            } else if (ast instanceof Ast.Stmt.Declaration) {
+                return visit((Ast.Stmt.Declaration) ast);
+            } else if (ast instanceof Ast.Stmt.Assignment) {
+                return visit((Ast.Stmt.Assignment) ast);
+            } else if (ast instanceof Ast.Stmt.If) {
+                return visit((Ast.Stmt.If) ast);
+            } else if (ast instanceof Ast.Stmt.For) {
+                return visit((Ast.Stmt.For) ast);
+            } else if (ast instanceof Ast.Stmt.While) {
+                return visit((Ast.Stmt.While) ast);
+            } else if (ast instanceof Ast.Stmt.Return) {
+                return visit((Ast.Stmt.Return) ast);
+            } else if (ast instanceof Ast.Expr.Literal) {
+                return visit((Ast.Expr.Literal) ast);
+            } else if (ast instanceof Ast.Expr.Group) {
+                return visit((Ast.Expr.Group) ast);
+            } else if (ast instanceof Ast.Expr.Binary) {
+                return visit((Ast.Expr.Binary) ast);
+            } else if (ast instanceof Ast.Expr.Access) {
+                return visit((Ast.Expr.Access) ast);
+            } else if (ast instanceof Ast.Expr.Function) {
+                return visit((Ast.Expr.Function) ast);
+            } else {
+                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            }
+        }
+
+    }
+
+}